@@ -0,0 +1,93 @@
+package ai.perplexity.hotword.verifier;
+
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+
+// Latency of the v2 bulk scan modes on a long synthetic recording. Thresholds are above any
+// score, so no detection ends a scan early and every mode scores the whole buffer. Each test
+// checks that the optimized mode reports the same best score as the plain scan, and logs the
+// timings (tag BulkScanBenchmark); speedups depend on the device and are not asserted.
+// -e seconds / -e runs size the benchmark.
+@RunWith(AndroidJUnit4.class)
+public class BulkScanBenchmarkTest {
+    private static final String TAG = "BulkScanBenchmark";
+    private static final float NO_HIT_THRESHOLD = 2.0f;
+
+    private KeyWordsDetection detector;
+    private short[] pcm;
+    private int runs;
+
+    @Before
+    public void setUp() throws Exception {
+        String model = TestSupport.assumeKwsModels();
+        int seconds = TestSupport.intArg("seconds", 60);
+        runs = TestSupport.intArg("runs", 3);
+
+        detector = new KeyWordsDetection(TestSupport.context(), new String[]{model},
+                new float[]{NO_HIT_THRESHOLD}, new int[]{1}, new long[]{0L});
+        detector.startListeningExternalAudio(NO_HIT_THRESHOLD);
+        pcm = TestSupport.syntheticSpeech(Constants.SAMPLE_RATE * seconds, 0x1234567);
+    }
+
+    @After
+    public void tearDown() {
+        if (detector != null) detector.close();
+    }
+
+    @Test
+    public void shardedScanMatchesSerial() {
+        detector.setParallelBulkScan(1, 64);
+        KeyWordsDetection.BulkScanResult serial = detector.scanExternalFullBuffer(pcm, pcm.length);
+        double serialMs = averageScanMs();
+
+        int workers = Math.max(2, Runtime.getRuntime().availableProcessors());
+        detector.setParallelBulkScan(workers, 64);
+        KeyWordsDetection.BulkScanResult sharded = detector.scanExternalFullBuffer(pcm, pcm.length);
+        double shardedMs = averageScanMs();
+        detector.setParallelBulkScan(1, 64);
+
+        Log.i(TAG, String.format(Locale.US, "sharded scan (%d workers, %d windows): serial %.1f ms, sharded %.1f ms, %.2fx",
+                workers, serial.totalWindows, serialMs, shardedMs, serialMs / Math.max(1e-6, shardedMs)));
+        assertEquals(serial.totalWindows, sharded.totalWindows);
+        assertEquals("best score differs", serial.bestScore, sharded.bestScore, 1e-5f);
+    }
+
+    @Test
+    public void bulkHeadMatchesFullScan() {
+        detector.setBulkOptimize(false, 0.80f);
+        KeyWordsDetection.BulkScanResult full = detector.scanExternalFullBuffer(pcm, pcm.length);
+        double fullMs = averageScanMs();
+
+        detector.setBulkOptimize(true, 0.80f);
+        KeyWordsDetection.BulkScanResult head = detector.scanExternalFullBuffer(pcm, pcm.length);
+        double headMs = averageScanMs();
+        detector.setBulkOptimize(false, 0.80f);
+
+        Log.i(TAG, String.format(Locale.US, "bulk head (ratio 0.80, %d windows): full scan %.1f ms, bulk head %.1f ms, %.2fx",
+                full.totalWindows, fullMs, headMs, fullMs / Math.max(1e-6, headMs)));
+        assertEquals(full.totalWindows, head.totalWindows);
+        assertEquals("best score differs", full.bestScore, head.bestScore, 1e-5f);
+    }
+
+    // Runs the current mode `runs` times after one warm-up scan.
+    private double averageScanMs() {
+        detector.scanExternalFullBuffer(pcm, pcm.length);
+        long total = 0;
+        for (int r = 0; r < runs; r++) {
+            long t0 = System.nanoTime();
+            detector.scanExternalFullBuffer(pcm, pcm.length);
+            total += System.nanoTime() - t0;
+        }
+        return total / 1_000_000.0 / Math.max(1, runs);
+    }
+}
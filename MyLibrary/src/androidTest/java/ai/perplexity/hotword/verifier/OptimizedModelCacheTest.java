@@ -0,0 +1,79 @@
+package ai.perplexity.hotword.verifier;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+// Startup with and without the optimized model cache: an uncached start, the first cached start
+// (optimizes and stores) and a second cached start (loads the stored graphs, XNNPACK on top).
+// Logs getStartupTimings() of each (tag OptimizedModelCache) and checks that the second cached
+// start hit the cache and that the cached sessions score like the uncached ones.
+@RunWith(AndroidJUnit4.class)
+public class OptimizedModelCacheTest {
+    private static final String TAG = "OptimizedModelCache";
+    private static final float NO_HIT_THRESHOLD = 2.0f;
+
+    private Context context;
+    private String model;
+
+    @Before
+    public void setUp() {
+        model = TestSupport.assumeKwsModels();
+        context = TestSupport.context();
+        deleteTree(new File(context.getNoBackupFilesDir(), "ort-optimized"));
+    }
+
+    @After
+    public void tearDown() {
+        KeyWordsDetection.setOptimizedModelCache(context, false);
+    }
+
+    @Test
+    public void cachedStartLoadsStoredGraphs() throws Exception {
+        short[] pcm = TestSupport.syntheticSpeech(Constants.SAMPLE_RATE * 5, 42);
+
+        KeyWordsDetection.setOptimizedModelCache(context, false);
+        float uncachedScore = startScanAndClose("uncached", pcm, null);
+
+        KeyWordsDetection.setOptimizedModelCache(context, true);
+        startScanAndClose("cached, first start", pcm, null);
+        String[] timings = new String[1];
+        float cachedScore = startScanAndClose("cached, second start", pcm, timings);
+
+        assertTrue("second start did not hit the cache: " + timings[0], timings[0].contains("cache hit"));
+        assertEquals("cached graph scores differently", uncachedScore, cachedScore, 1e-3f);
+    }
+
+    private float startScanAndClose(String label, short[] pcm, String[] timingsOut) throws Exception {
+        KeyWordsDetection detector = new KeyWordsDetection(context, new String[]{model},
+                new float[]{NO_HIT_THRESHOLD}, new int[]{1}, new long[]{0L});
+        try {
+            String timings = detector.getStartupTimings();
+            Log.i(TAG, label + ": " + timings);
+            if (timingsOut != null) timingsOut[0] = timings;
+            detector.startListeningExternalAudio(NO_HIT_THRESHOLD);
+            return detector.scanExternalFullBuffer(pcm, pcm.length).bestScore;
+        } finally {
+            detector.close();
+        }
+    }
+
+    private static void deleteTree(File f) {
+        File[] children = f.listFiles();
+        if (children != null) {
+            for (File c : children) deleteTree(c);
+        }
+        f.delete();
+    }
+}
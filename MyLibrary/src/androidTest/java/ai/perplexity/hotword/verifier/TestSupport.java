@@ -0,0 +1,52 @@
+package ai.perplexity.hotword.verifier;
+
+import android.content.Context;
+import android.os.Bundle;
+
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import static org.junit.Assume.assumeTrue;
+
+// Shared setup of the instrumented tests: runner arguments, model assets (skipping the test when
+// one is missing, see src/androidTest/assets/README.md) and synthetic audio.
+final class TestSupport {
+    static final String MELSPEC_MODEL = "melspectrogram.onnx";
+    static final String DEFAULT_KWS_MODEL = "hey_perplexity.onnx";
+    static final String DEFAULT_VAD_MODEL = "silero_vad.onnx";
+
+    private TestSupport() {
+    }
+
+    static Context context() {
+        return InstrumentationRegistry.getInstrumentation().getContext();
+    }
+
+    static String arg(String name, String defaultValue) {
+        Bundle args = InstrumentationRegistry.getArguments();
+        return args.getString(name, defaultValue);
+    }
+
+    static int intArg(String name, int defaultValue) {
+        return Integer.parseInt(arg(name, String.valueOf(defaultValue)));
+    }
+
+    // Skips the test unless the asset is in the test APK.
+    static void assumeAsset(String assetName) {
+        assumeTrue("model asset " + assetName + " not available (see src/androidTest/assets/README.md)",
+                ModelAssetCache.assetExists(context(), assetName));
+    }
+
+    // The KWS model under test (-e kwsModel, default hey_perplexity.onnx); skips the test unless it
+    // and the melspec model are available.
+    static String assumeKwsModels() {
+        String model = arg("kwsModel", DEFAULT_KWS_MODEL);
+        assumeAsset(MELSPEC_MODEL);
+        assumeAsset(model);
+        return model;
+    }
+
+    // Speech-band noise over a low tone: never silent, and no two windows alike.
+    static short[] syntheticSpeech(int samples, int seed) {
+        return ProbeSignal.noiseOverTone(samples, seed, 3000, 4000, 0.03);
+    }
+}
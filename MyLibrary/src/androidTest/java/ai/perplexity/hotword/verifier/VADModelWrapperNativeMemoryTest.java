@@ -0,0 +1,74 @@
+package ai.perplexity.hotword.verifier;
+
+import android.os.Debug;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertTrue;
+
+// Soak check for native leaks in VADModelWrapper.predict_2: runs `frames` predictions (default
+// 1M, about 22 hours of audio) on synthetic audio, samples the native heap every SAMPLE_EVERY
+// frames and fails as soon as a sample is more than `maxGrowthBytes` above the warmed-up baseline,
+// so the heap has to stay flat over the whole run, not just end low. The old predict_2 leaked
+// roughly one input tensor + Result per frame, i.e. hundreds of MB over the default run.
+//
+// VAD model: -e vadModel <asset>, default silero_vad.onnx.
+//   ./gradlew :MyLibrary:connectedAndroidTest -PtestModelDir=/path/to/models \
+//       -Pandroid.testInstrumentationRunnerArguments.frames=5000000
+@RunWith(AndroidJUnit4.class)
+public class VADModelWrapperNativeMemoryTest {
+    private static final String TAG = "VADNativeMemoryTest";
+    private static final int WARMUP_FRAMES = 1000;
+    private static final int SAMPLE_EVERY = 10000;
+
+    private VADModelWrapper vad;
+    private int frames;
+    private long maxGrowthBytes;
+
+    @Before
+    public void setUp() throws Exception {
+        String model = TestSupport.arg("vadModel", TestSupport.DEFAULT_VAD_MODEL);
+        frames = TestSupport.intArg("frames", 1000000);
+        maxGrowthBytes = Long.parseLong(TestSupport.arg("maxGrowthBytes", String.valueOf(512 * 1024)));
+
+        TestSupport.assumeAsset(model);
+        vad = new VADModelWrapper(TestSupport.context(), model);
+    }
+
+    @After
+    public void tearDown() {
+        if (vad != null) vad.close();
+    }
+
+    @Test
+    public void predictDoesNotGrowNativeHeap() throws Exception {
+        short[] frame = ProbeSignal.noise(Constants.FRAME_LENGTH, 12345, 4000);
+        for (int i = 0; i < WARMUP_FRAMES; i++) {
+            vad.predict_2(frame, Constants.FRAME_LENGTH);
+        }
+        System.gc();
+        long before = Debug.getNativeHeapAllocatedSize();
+        long maxSampled = 0;
+        for (int i = 1; i <= frames; i++) {
+            vad.predict_2(frame, Constants.FRAME_LENGTH);
+            if ((i % SAMPLE_EVERY) == 0) {
+                long sampled = Debug.getNativeHeapAllocatedSize() - before;
+                maxSampled = Math.max(maxSampled, sampled);
+                assertTrue("native heap " + sampled + " bytes above baseline after " + i + " frames (bound "
+                        + maxGrowthBytes + ")", sampled <= maxGrowthBytes);
+            }
+        }
+        System.gc();
+        long growth = Debug.getNativeHeapAllocatedSize() - before;
+        Log.i(TAG, frames + " frames, native growth=" + growth + " bytes (max sampled " + maxSampled + ")");
+
+        assertTrue("native heap grew by " + growth + " bytes over " + frames + " frames (bound "
+                + maxGrowthBytes + ")", growth <= maxGrowthBytes);
+    }
+}
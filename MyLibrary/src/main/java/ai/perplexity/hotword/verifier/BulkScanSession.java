@@ -0,0 +1,35 @@
+package ai.perplexity.hotword.verifier;
+
+// Work remembered between incremental v2 bulk scans of a growing buffer (same utterance, more
+// audio each push). Only results that cannot change when audio is appended are kept: scores of
+// windows lying entirely inside the pushed samples, and the mel frames that do not touch padding.
+// Identified by a caller stream ID, or (streamId == null) by a fingerprint of the covered prefix.
+final class BulkScanSession {
+    final String streamId;
+    int length;          // input samples covered by this state
+    long fingerprint;    // fingerprint(pcm, length)
+    int cachedSteps;     // windows 0 .. cachedSteps-1 are final
+    float[][] scores;    // [model][cachedSteps]
+    int melBase;         // absolute frame index of melFrames[0]
+    float[][] melFrames; // stable mel frames [melBase, melBase + melFrames.length); may be null
+
+    BulkScanSession(String streamId) {
+        this.streamId = streamId;
+    }
+
+    // True if pcm[0 .. length) starts with the audio this state was built from.
+    boolean isPrefixOf(short[] pcm, int length) {
+        return length >= this.length && fingerprint(pcm, this.length) == fingerprint;
+    }
+
+    // FNV-1a over the length and every sample of the prefix, so an edit anywhere in it (not just
+    // at sampled positions) invalidates the cached scores. One pass over the samples, still far
+    // cheaper than the melspec and KWS runs it saves.
+    static long fingerprint(short[] pcm, int length) {
+        long h = 0xcbf29ce484222325L ^ length;
+        for (int i = 0; i < length; i++) {
+            h = (h ^ (pcm[i] & 0xffff)) * 0x100000001b3L;
+        }
+        return h;
+    }
+}
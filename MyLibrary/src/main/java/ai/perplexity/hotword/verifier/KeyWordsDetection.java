@@ -38,14 +38,33 @@ import android.content.pm.PackageManager;
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntConsumer;
 
 public class KeyWordsDetection {
 
+    // What pushExternalAudio() does with audio that arrives before the detector is ready.
+    public enum PendingAudioPolicy {
+        REJECT, // dropped (counted in getRejectedPendingSamples())
+        BUFFER  // the newest PENDING_AUDIO_MAX_SAMPLES are kept and processed on the first push after ready
+    }
+
     private String vadPath = null;
 
     private OrtEnvironment env = null;
     private OrtSession[] sessions;
+    private volatile KwsModelPlan[] kwsPlans; // per-model input plan, parallel to sessions[]
     private OrtSession melspecSession;
     private final String TAG = "KeyWordsDetection";
     private Context context;
@@ -67,8 +86,14 @@ public class KeyWordsDetection {
     private final int featureBufferMaxLen = 120;
     private Deque<float[]> featureDeque = new ArrayDeque<>();
 
-    private Deque<Short> rawDataBuffer = new ArrayDeque<>(RAW_BUFFER_MAX_LEN);
-    private ArrayList<float[]> melspectrogramBuffer;
+    private ShortRingBuffer rawDataBuffer = new ShortRingBuffer(RAW_BUFFER_MAX_LEN);
+    // scratch for the streaming melspec input (last nSamples + 480 samples, as float)
+    private final float[] streamMelInput = new float[RAW_BUFFER_MAX_LEN];
+    private MelFrameRing melspectrogramBuffer;
+    private static final int MEL_WINDOW_FRAMES = 76; // streaming KWS window: last 76 mel frames
+    private static final int MEL_BINS = 32;
+    // reusable model-ready [76,32] input for the streaming path
+    private final float[] melWindowFlat = new float[MEL_WINDOW_FRAMES * MEL_BINS];
 //    private String audioWavPath;
     private int[] keyBufferCnts;
     private float[] keyThreasholds;
@@ -78,12 +103,33 @@ public class KeyWordsDetection {
     private int[] perModellPredictions;
     private long[] lastCallbackInMS;
 
-    private int bufferPosition = 0;
-    private final short[] audioBuffer;
-    private static final int LAST_SEC_BUFF_SIZE = SAMPLE_RATE * 3; // 3 seconds buffer
+    private volatile int bufferPosition = 0;
+    private volatile short[] audioBuffer;   // pre-roll ring, oldest sample at bufferPosition
+    private static final int LAST_SEC_BUFF_SIZE = SAMPLE_RATE * 3; // 3 seconds buffer (default pre-roll)
+    private volatile int postRollSamples = 0;
+    private final ArrayList<CaptureJob> pendingCaptures = new ArrayList<>();
+    private volatile boolean hasPendingCaptures = false;
+    private volatile BiConsumer<String, short[]> captureCallback;
+    private String mappedCaptureName;
+    // Bulk scans (guarded by modelLock): clips are cut from the scanned buffer around the hit.
+    private short[] bulkCapturePcm;    // null outside a bulk scan
+    private int bulkCaptureLength;
+    private int bulkCaptureFrontPad;   // zeros the scan puts before a short buffer
+    private int bulkHitEnd;            // input sample just past the window that hit
     private String[] strippedModelNames;
     private String[] internalModelPaths;
-    private String lastFile = "";
+    private volatile String lastFile = "";
+    private volatile WavWriter wavWriter = new WavWriter(SAMPLE_RATE, LAST_SEC_BUFF_SIZE);
+
+    // Opt-in (setAsyncDetectionEvents): detection side effects (WAV capture + callback) run on one
+    // background thread and the hit path only copies the 3 s ring into a pooled snapshot. At most
+    // maxPendingDetections events wait; beyond that the WAV write is dropped and the callback is
+    // delivered on the detecting thread.
+    private volatile boolean asyncDetectionEvents = false;
+    private int maxPendingDetections = 4;
+    private ThreadPoolExecutor detectionExecutor;
+    private final ArrayDeque<short[]> snapshotPool = new ArrayDeque<>();
+    private final AtomicInteger droppedDetectionWrites = new AtomicInteger();
     private long[] msBetweenCallbacks;
     private boolean isSticky = true;
     private static int randomDataSize = 16000 * 4;
@@ -98,19 +144,119 @@ public class KeyWordsDetection {
     private float VADThreshold = 0.45f;
     private int msWindow = 1000;
 
+    // VAD gating (streaming push path): KWS/melspec only run while speech prob >= VADThreshold,
+    // plus a hangover of msWindow ms. While gated, audio still goes into vadHistory so the mel
+    // ring can be rebuilt from real audio when speech resumes.
+    private VadDetector vadDetector = null;
+    private ShortRingBuffer vadHistory = null;
+    private long vadSamplesSeen = 0;
+    private long vadLastSpeechSample = Long.MIN_VALUE;
+    private boolean kwsGated = true;
+    private volatile boolean bulkVadPrescan = false;
+    private volatile int bulkVadMarginMs = 300;
+    private VadDetector bulkVadDetector = null; // pre-scan VAD, separate from the streaming gate
+    // enough history for a full 76-frame streaming window (+ melspec context)
+    private static final int VAD_PRIME_SAMPLES = (MEL_WINDOW_FRAMES + 4) * 160 + 480;
+
     // --- External push mode (no mic thread) ---
     private final AtomicBoolean isExternalMode = new AtomicBoolean(false);
     private short[] extCarry = new short[Constants.FRAME_LENGTH]; // leftover < 1280 from prior push
     private int extCarryLen = 0;
 
     // Bulk optimize controls
-    private volatile boolean bulkOptimizeEnabled = true;
+    private volatile boolean bulkOptimizeEnabled = false; // opt-in: head hits are only found after the batched head run
     private volatile float   bulkOptimizeRatio   = 0.80f; // start predicting after this ratio of audio has been ingested
     private volatile int     bulkMinSamples      = 5000;
 
     private final ArrayList<float[][]> bulkWindows = new ArrayList<>(512);
     private boolean bulkCollecting = false; // true while ingesting the "head" of a bulk push
 
+    // Bulk melspec (v2): run melspec once per block of sliding windows and slice [T,F] views,
+    // instead of re-running it on every 31712-sample chunk. Only used once parity is verified.
+    private volatile boolean bulkMelEnabled     = true;
+    private volatile int     bulkMelBlockWindows = 64;   // windows per melspec run (~7 s of audio)
+    private boolean bulkMelChecked  = false;
+    private boolean bulkMelVerified = false;
+    private int melHopSamples   = Constants.FRAME_LENGTH / Constants.STEP_SIZE; // 160
+    private int melFrameSamples = -1; // samples spanned by one mel frame (derived from the model)
+    private int melClipFrames   = -1; // mel frames per V2_KWD_CLIP_SAMPLES window
+    private static final float BULK_MEL_PARITY_TOL = 1e-5f;
+
+    // Digital silence (all-zero samples) always gives the same mel frame, so bulk melspec splices
+    // silenceMelRow in for frames that see only zeros (front/tail padding), and windows made only
+    // of such frames (silenceWindow, compared by identity) reuse per-model silenceWindowScores.
+    private volatile float[] silenceMelRow = null;
+    private volatile float[][] silenceWindow = null;
+    private volatile float[] silenceWindowScores = null;
+
+    // Optional pure-Java melspec (LogMelFrontend) instead of melspectrogram.onnx; null = ONNX.
+    private volatile LogMelFrontend javaMelFrontend = null;
+    private String melspecModelPath = null;
+
+    // Memory loading: asset models become sessions straight from the (mapped) asset bytes and
+    // internalModelPaths / melspecModelPath hold asset names; see ModelLoader.
+    private static volatile boolean loadModelsFromMemory = false;
+
+    // Staged initialization (createAsync): readiness, deferred start and audio pushed before ready.
+    private static final int MAX_INIT_THREADS = 4;
+    private static final int PENDING_AUDIO_MAX_SAMPLES = SAMPLE_RATE * 3;
+    private final long ctorStart;
+    private final String[] modelPaths;
+    private final PendingAudioPolicy pendingPolicy;
+    private final CompletableFuture<KeyWordsDetection> readyFuture = new CompletableFuture<>();
+    private volatile boolean ready = false;
+    private final Object pendingLock = new Object();
+    private boolean startDeferred = false;
+    private float deferredThreshold;
+    private ShortRingBuffer pendingAudio;
+    private long rejectedPendingSamples = 0;
+    private String startupTimings = "";
+
+    // Hot model swap: frames (pushExternalAudio) and bulk scans run under modelLock, so a swap
+    // publishes its new model set between two of them; swaps run one at a time on swapExecutor.
+    // Lock order: modelLock before `this` (frames reach synchronized methods such as bufferRawData).
+    private final Object modelLock = new Object();
+    private ExecutorService swapExecutor;
+    private volatile CompletableFuture<ModelSwapStats> lastSwap = null;
+    private volatile ModelSwapStats lastSwapStats = null;
+    private volatile long framesProcessed = 0; // frames through pushExternalAudio (under modelLock)
+    private volatile boolean swapPublishing = false; // a swap holds modelLock to install its set
+    private final AtomicLong framesHeldBack = new AtomicLong(); // frames that arrived while it did
+    private static final float JAVA_MEL_TOL = 1e-2f; // max abs diff vs ONNX output (dB-scale values)
+
+    // Batched KWS (v2): stack up to kwsBatchSize windows into one [N,T,F] run per model.
+    // Peak input memory per run is kwsBatchSize * T * F floats.
+    private volatile int kwsBatchSize = 32;
+    private boolean[] kwsBatchUnsupported; // model rejected the batched shape -> per-window from then on
+
+    // Parallel multi-model scoring: models of one window are scored on kwsExecutor (+ the caller),
+    // hit handling stays on the caller thread in model-index order. null = serial.
+    private volatile ExecutorService kwsExecutor = null;
+    private int kwsIntraOpThreads = 1;   // intra-op threads per KWS session (for the thread cap)
+    private int kwsParallelMax = 0;      // last setParallelModels() request, re-applied on model swap
+    private float[] frameScores = new float[0];
+
+    // Sharded bulk scan (long recordings): windows are split into contiguous shards scored on
+    // bulkScanExecutor; the consecutive-hit logic then runs serially over the merged scores.
+    private volatile ExecutorService bulkScanExecutor = null;
+    private volatile int bulkScanWorkers = 1;
+    private volatile int bulkScanMinShardWindows = 64;
+
+    // Coarse-to-fine search (v2 bulk): score every coarseFactor-th window first, then full
+    // resolution only around coarse windows scoring >= coarseInterest for any model.
+    private volatile boolean coarseSearchEnabled = false;
+    private volatile int coarseFactor = 4;
+    private volatile float coarseInterest = 0.2f;
+
+    // Incremental bulk scanning: per-stream state reused across pushes of a growing buffer.
+    private volatile boolean incrementalBulkScan = false;
+    private static final int MAX_BULK_SESSIONS = 4;
+    private final LinkedHashMap<String, BulkScanSession> bulkSessions = new LinkedHashMap<>(8, 0.75f, true);
+    private int bulkSessionSeq = 0;
+
+    // Budget of the bulk scan in progress (budgeted overload only); polled once per window.
+    private volatile ScanBudget scanBudget = null;
+
     private int melspecInputRank = 1; // 1D or 2D (batch, time)
     private static final float INV_SHORT_MAX = 1.0f / 32768.0f;
 
@@ -122,22 +268,21 @@ public class KeyWordsDetection {
     }
     private static final boolean DEBUG = false;
     
-    static {
-        try {
-            System.loadLibrary("onnxruntime");
-            //Log.d("KeyWordsDetection", "onnxruntime loaded successfully.");
-        } catch (UnsatisfiedLinkError e) {
-            Log.w("KeyWordsDetection", "Native library not found or symbol missing: " + e.getMessage(), e);
-        } catch (SecurityException e) {
-            Log.w("KeyWordsDetection", "Security violation while loading native library: " + e.getMessage(), e);
-        } catch (Exception e) {
-            Log.w("KeyWordsDetection", "Unexpected error while loading native libraries: " + e.getMessage(), e);
-        } catch (Throwable t) {
-            Log.w("KeyWordsDetection", "Critical error while loading native libraries", t);
-        }
+    // Native libraries are loaded on first use (constructor / async init thread), not in a static
+    // initializer, so merely loading this class on the UI thread stays cheap.
+    private static boolean nativeLoaded = false;
+
+    static synchronized void loadNativeLibraries() {
+        if (nativeLoaded) return;
+        nativeLoaded = true;
+        loadNativeLibrary("onnxruntime");
+        loadNativeLibrary("onnxruntime4j_jni");
+    }
+
+    private static void loadNativeLibrary(String name) {
         try {
-            System.loadLibrary("onnxruntime4j_jni");
-            //Log.d("KeyWordsDetection", "onnxruntime4j_jni loaded successfully.");
+            System.loadLibrary(name);
+            //Log.d("KeyWordsDetection", name + " loaded successfully.");
         } catch (UnsatisfiedLinkError e) {
             Log.w("KeyWordsDetection", "Native library not found or symbol missing: " + e.getMessage(), e);
         } catch (SecurityException e) {
@@ -156,11 +301,33 @@ public class KeyWordsDetection {
                             int[] bufferCnts,
                             long[] msBetweenCallback)
             throws OrtException, SecurityException {
+        this(context, modelPaths, thresholds, bufferCnts, msBetweenCallback, PendingAudioPolicy.REJECT);
+        loadNativeLibraries();
+        try {
+            loadModels();
+        } catch (OrtException | RuntimeException e) {
+            releaseModels();
+            readyFuture.completeExceptionally(e);
+            throw e;
+        }
+        finishInit();
+    }
+
+    // Cheap part of construction (thresholds, counters, buffers); models load in loadModels().
+    private KeyWordsDetection(Context context,
+                              String[] modelPaths,
+                              float[] thresholds,
+                              int[] bufferCnts,
+                              long[] msBetweenCallback,
+                              PendingAudioPolicy pendingPolicy) {
+        ctorStart = System.nanoTime();
 
         Log.d(TAG, "KeyWordsDetection constructor: ");
         this.keyThreasholds = thresholds;
         this.keyBufferCnts = bufferCnts;
         this.msBetweenCallbacks = msBetweenCallback;
+        this.modelPaths = modelPaths.clone();
+        this.pendingPolicy = pendingPolicy;
 
         int numModels = modelPaths.length;
         fakeThresholds = new float[numModels];
@@ -187,8 +354,6 @@ public class KeyWordsDetection {
         strippedModelNames = new String[modelPaths.length];
         internalModelPaths = new String[modelPaths.length];
 
-        Boolean isPlex = false;
-
         Log.d(TAG, "KeyWordsDetection constructor: modelPaths.length: " + modelPaths.length);
 
         for (int i = 0; i < modelPaths.length; i++) {
@@ -196,52 +361,132 @@ public class KeyWordsDetection {
             name = name.substring(name.lastIndexOf('/') + 1);
             name = name.replaceFirst("[.][^.]+$", "");
             strippedModelNames[i] = name;
-
-            String local = assetExists(modelPaths[i])
-                 ? copyAssetToInternalStorage(modelPaths[i])
-                 : modelPaths[i];
-            internalModelPaths[i] = local;
-            logOnnxAndData(internalModelPaths[i]);
-        }
-        String melspecPath;
-        melspecPath   = copyAssetIfExists("melspectrogram.onnx");
- 
-        Log.i(TAG, "internalModelPaths[0] == " + internalModelPaths[0]);
-        if (internalModelPaths[0] == null || melspecPath == null) {
-            Log.e(TAG, "KeyWordsDetection: Model path is null after copying asset.");
-            throw new OrtException("Failed to copy model asset to internal storage.");
         }
+    }
 
-        try {
-            //Log.d(TAG, "KeyWordsDetection constructor: Models: " + Arrays.toString(modelPaths));
-            env = OrtEnvironment.getEnvironment();
-            OrtSession.SessionOptions options = new OrtSession.SessionOptions();
-
-            final int cores = Math.max(1, Runtime.getRuntime().availableProcessors());
-
+    // Non-blocking construction: returns at once; assets, sessions (in parallel) and warmup are
+    // done on a background thread. whenReady() completes when the detector can run, or fails
+    // with the load error. Until then pushExternalAudio() follows pendingPolicy, and a
+    // startListeningExternalAudio() call takes effect once loading is done.
+    public static KeyWordsDetection createAsync(Context context,
+                                                String[] modelPaths,
+                                                float[] thresholds,
+                                                int[] bufferCnts,
+                                                long[] msBetweenCallback,
+                                                PendingAudioPolicy pendingPolicy) {
+        final KeyWordsDetection detector = new KeyWordsDetection(context, modelPaths, thresholds,
+                bufferCnts, msBetweenCallback, pendingPolicy);
+        Thread init = new Thread(() -> {
             try {
-                Map<String, String> xnnpackOpts = Collections.emptyMap();
-                options.addXnnpack(xnnpackOpts);
-                Log.i(TAG, "XNNPACK EP added successfully.");
-            } catch (Exception e) {
-                Log.w(TAG, "XNNPACK EP not available or failed to load.", e);
+                loadNativeLibraries();
+                detector.loadModels();
+                detector.finishInit();
+            } catch (Throwable t) {
+                Log.e("KeyWordsDetection", "createAsync: loading failed", t);
+                detector.releaseModels();
+                detector.readyFuture.completeExceptionally(t);
             }
+        }, "kws-init");
+        init.setDaemon(true);
+        init.start();
+        return detector;
+    }
 
-            options.setOptimizationLevel(OrtSession.SessionOptions.OptLevel.ALL_OPT);
-//            options.setIntraOpNumThreads(Math.min(2, cores)); Best????
-            options.setIntraOpNumThreads(Math.min(2, cores)); 
-            options.setInterOpNumThreads(1);
-            options.setExecutionMode(OrtSession.SessionOptions.ExecutionMode.PARALLEL);
-            options.setCPUArenaAllocator(true);
-            options.setMemoryPatternOptimization(true);
-            options.setSessionLogVerbosityLevel(0);
+    // Completes with this detector once it is ready (immediately for the blocking constructor).
+    public CompletableFuture<KeyWordsDetection> whenReady() {
+        return readyFuture;
+    }
 
-            try {
-                melspecSession = env.createSession(melspecPath, options);
-            } catch (Exception e) {
-                Log.e(TAG, "Failed to create melspecSession from " + melspecPath, e);
-                throw e;
+    public boolean isReady() {
+        return ready;
+    }
+
+    // Assets -> sessions -> plans / buffers -> warmup. Sessions are created concurrently on a
+    // small pool (melspec and every KWS model); the rest runs on the calling thread.
+    private void loadModels() throws OrtException {
+        final StringBuilder timings = new StringBuilder();
+        final int n = modelPaths.length;
+        env = OrtEnvironment.getEnvironment();
+        kwsIntraOpThreads = Math.min(2, Math.max(1, Runtime.getRuntime().availableProcessors()));
+        sessions = new OrtSession[n];
+        final OrtSession[] melspec = new OrtSession[1];
+        final StringBuilder[] sessionTimings = new StringBuilder[n + 1];
+
+        int cores = Math.max(1, Runtime.getRuntime().availableProcessors());
+        int poolSize = Math.max(1, Math.min(Math.min(n + 1, MAX_INIT_THREADS), cores));
+        final AtomicInteger seq = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(poolSize, r -> {
+            Thread t = new Thread(r, "kws-init-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        List<Future<?>> pending = new ArrayList<>(n + 1);
+        try {
+            pending.add(pool.submit(() -> {
+                String melspecPath = assetExists("melspectrogram.onnx") ? resolveModelSource("melspectrogram.onnx") : null;
+                melspecModelPath = melspecPath;
+                if (melspecPath == null) {
+                    Log.e(TAG, "KeyWordsDetection: Model path is null after copying asset.");
+                    throw new OrtException("Failed to copy model asset to internal storage.");
+                }
+                sessionTimings[0] = new StringBuilder();
+                try {
+                    melspec[0] = ModelLoader.createCachedSession(env, context, melspecPath,
+                            this::buildSessionOptions, sessionTimings[0]);
+                } catch (Exception e) {
+                    Log.e(TAG, "Failed to create melspecSession from " + melspecPath, e);
+                    throw e;
+                }
+                return null;
+            }));
+            for (int k = 0; k < n; k++) {
+                final int i = k;
+                pending.add(pool.submit(() -> {
+                    internalModelPaths[i] = resolveModelSource(modelPaths[i]);
+                    if (!loadModelsFromMemory) logOnnxAndData(internalModelPaths[i]);
+                    if (internalModelPaths[i] == null) {
+                        Log.e(TAG, "KeyWordsDetection: Model path is null after copying asset.");
+                        throw new OrtException("Failed to copy model asset to internal storage.");
+                    }
+                    sessionTimings[i + 1] = new StringBuilder();
+                    try {
+                        Log.i(TAG, "Creating KWS session from: " + internalModelPaths[i]);
+                        sessions[i] = ModelLoader.createCachedSession(env, context, internalModelPaths[i],
+                                this::buildSessionOptions, sessionTimings[i + 1]);
+                    } catch (Exception e) {
+                        Log.e(TAG, "Failed to create KWS session[" + i + "] from "
+                                + internalModelPaths[i], e);
+                        throw e;
+                    }
+                    return null;
+                }));
             }
+            for (Future<?> f : pending) {
+                f.get();
+            }
+        } catch (InterruptedException e) {
+            awaitInitTasks(pool, pending);
+            melspecSession = melspec[0]; // released by the caller with the KWS sessions
+            Thread.currentThread().interrupt();
+            throw new OrtException("Interrupted while creating sessions");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            awaitInitTasks(pool, pending);
+            melspecSession = melspec[0];
+            if (cause instanceof OrtException) throw (OrtException) cause;
+            throw new OrtException("Session creation failed: " + cause);
+        } finally {
+            pool.shutdown();
+        }
+        melspecSession = melspec[0];
+        for (StringBuilder t : sessionTimings) {
+            if (t == null || t.length() == 0) continue;
+            if (timings.length() > 0) timings.append(", ");
+            timings.append(t);
+        }
+        Log.i(TAG, "internalModelPaths[0] == " + internalModelPaths[0]);
+
+        try {
 // IMPORTANT: initialize melspecInputNames before using it
 try {
     melspecInputNames = melspecSession.getInputNames();
@@ -261,25 +506,16 @@ try {
     melspecInputRank = 2;
 }
 
-            melspecInputNames = melspecSession.getInputNames();
 
-            rawDataBuffer = new ArrayDeque<>(RAW_BUFFER_MAX_LEN);
-            melspectrogramBuffer = new ArrayList<>();
+            melspecInputNames = melspecSession.getInputNames();
 
-            sessions = new OrtSession[modelPaths.length];
-            inputNames      = new ArrayList[modelPaths.length];
-            nFeatureFrames  = new    int  [modelPaths.length];
-            for (int i = 0; i < modelPaths.length; i++) {
-                                try {
-                Log.i(TAG, "Creating KWS session from: " + internalModelPaths[i]);
-                    sessions[i] = env.createSession(internalModelPaths[i], options);
-                } catch (Exception e) {
-                    Log.e(TAG, "Failed to create KWS session[" + i + "] from "
-                            + internalModelPaths[i], e);
-                    throw e;
-                }
+            rawDataBuffer = new ShortRingBuffer(RAW_BUFFER_MAX_LEN);
+            melspectrogramBuffer = new MelFrameRing(MEL_SPECTROGRAM_MAX_LEN, MEL_BINS);
 
-                // sessions[i] = env.createSession(internalModelPaths[i], options);
+            inputNames      = new ArrayList[n];
+            nFeatureFrames  = new    int  [n];
+            kwsBatchUnsupported = new boolean[n];
+            for (int i = 0; i < n; i++) {
                 inputNames[i] = new ArrayList<>(sessions[i].getInputNames());
                 Map<String, NodeInfo> inputInfoMap = sessions[i].getInputInfo();
                 NodeInfo inputInfo = inputInfoMap.get(inputNames[i].get(0));
@@ -288,18 +524,9 @@ try {
                 nFeatureFrames[i] = (int) shape[1];
                 //Log.d(TAG, "Model [" + strippedModelNames[i] + "] nFeatureFrames: " + nFeatureFrames[i]);
             }
-            if (melspectrogramBuffer != null)
-                melspectrogramBuffer.clear();
-            else
-                melspectrogramBuffer = new ArrayList<>();
-
-            for (int i = 0; i < 76; i++) {
-                float[] row = new float[32];
-                for (int j = 0; j < 32; j++) {
-                    row[j] = 1.0f;
-                }
-                melspectrogramBuffer.add(row);
-            }
+            buildKwsPlans();
+            melspectrogramBuffer.clear();
+            melspectrogramBuffer.fill(MEL_WINDOW_FRAMES, 1.0f);
             printMelspectrogramBuffer();
 
             if (featureDeque != null)
@@ -314,7 +541,12 @@ try {
                 float[] row = new float[96];                  // Java initializes to 0.0f by default
                 updateFeatureQueue(row);
             }
+            long warmStart = System.nanoTime();
             warmupModels();
+            timings.append(", warmup=").append((System.nanoTime() - warmStart) / 1_000_000L).append(" ms");
+            startupTimings = "total=" + (System.nanoTime() - ctorStart) / 1_000_000L + " ms" +
+                    (loadModelsFromMemory ? " [memory]" : "") + ": " + timings;
+            Log.i(TAG, "startup " + startupTimings);
 
         } catch (OrtException e) {
             e.printStackTrace();
@@ -322,6 +554,82 @@ try {
         }
     }
 
+    // After a failed session task: cancel what has not started and wait for the running ones, so
+    // every session they create is in sessions[] / melspec before the caller releases them.
+    private static void awaitInitTasks(ExecutorService pool, List<Future<?>> pending) {
+        for (Future<?> f : pending) f.cancel(false);
+        pool.shutdown();
+        boolean interrupted = Thread.interrupted();
+        while (true) {
+            try {
+                if (!pool.awaitTermination(60, TimeUnit.SECONDS)) {
+                    Log.w("KeyWordsDetection", "session creation still running after a load failure");
+                }
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+    }
+
+    // Publish readiness; a start requested while loading runs first (and may be requested again
+    // while it runs, hence the loop).
+    private void finishInit() {
+        while (true) {
+            float threshold;
+            synchronized (pendingLock) {
+                if (!startDeferred) {
+                    ready = true;
+                    break;
+                }
+                startDeferred = false;
+                threshold = deferredThreshold;
+            }
+            startListeningExternalAudioNow(threshold);
+        }
+        readyFuture.complete(this);
+    }
+
+    // Session options of the detector's models (XNNPACK, 2 intra-op threads). preOptimized: the
+    // graph comes from the optimized model cache, so ORT skips graph optimization.
+    private OrtSession.SessionOptions buildSessionOptions(boolean preOptimized) throws OrtException {
+        OrtSession.SessionOptions options = new OrtSession.SessionOptions();
+        final int cores = Math.max(1, Runtime.getRuntime().availableProcessors());
+
+        try {
+            Map<String, String> xnnpackOpts = Collections.emptyMap();
+            options.addXnnpack(xnnpackOpts);
+            Log.i(TAG, "XNNPACK EP added successfully.");
+        } catch (Exception e) {
+            Log.w(TAG, "XNNPACK EP not available or failed to load.", e);
+        }
+
+        options.setOptimizationLevel(preOptimized ? OrtSession.SessionOptions.OptLevel.NO_OPT
+                                                  : OrtSession.SessionOptions.OptLevel.ALL_OPT);
+//            options.setIntraOpNumThreads(Math.min(2, cores)); Best????
+        options.setIntraOpNumThreads(Math.min(2, cores));
+        options.setInterOpNumThreads(1);
+        options.setExecutionMode(OrtSession.SessionOptions.ExecutionMode.PARALLEL);
+        options.setCPUArenaAllocator(true);
+        options.setMemoryPatternOptimization(true);
+        options.setSessionLogVerbosityLevel(0);
+        return options;
+    }
+
+    // Persist optimized model graphs (noBackupFilesDir/ort-optimized, versioned by APK and device)
+    // and load them on later starts. Applies to sessions created afterwards.
+    public static void setOptimizedModelCache(Context context, boolean enabled) {
+        ModelLoader.setOptimizedCacheRoot(context,
+                enabled ? new File(context.getNoBackupFilesDir(), "ort-optimized") : null);
+    }
+
+    // Session creation / warmup times of the last construction, e.g. to compare cold starts with
+    // and without the optimized model cache.
+    public String getStartupTimings() {
+        return startupTimings;
+    }
+
         private void logOnnxAndData(String onnxPath) {
         try {
             File onnx = new File(onnxPath);
@@ -340,9 +648,63 @@ try {
 
     public void close() {
         //Log.d(TAG, "KeyWordsDetection close() called, cleaning up all native resources.");
+        if (!ready) {
+            // still loading (createAsync): let it finish so no session is created after cleanup
+            try {
+                readyFuture.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException ignored) {
+                // loading failed; release whatever was created
+            }
+        }
 
         stopListening();
 
+        CompletableFuture<ModelSwapStats> swap = lastSwap;
+        if (swap != null && !Thread.holdsLock(modelLock)) {
+            // swaps queued after it see env == null and drop their models
+            try {
+                swap.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException ignored) {
+            }
+        }
+
+        synchronized (modelLock) {
+            releaseModels();
+            if (env != null) {
+                try { env.close(); } catch (Exception ignored) {}
+                env = null;
+            }
+            if (swapExecutor != null) {
+                swapExecutor.shutdown();
+                swapExecutor = null;
+            }
+        }
+
+        keyWordDetectionThread = null;
+        VADThread = null;
+        setParallelModels(0);
+        setParallelBulkScan(1, bulkScanMinShardWindows);
+        setVADGating(false, null, VADThreshold, msWindow);
+        setBulkVADPrescan(false, null, bulkVadMarginMs);
+        shutdownDetectionExecutor(); // pending WAV writes finish first
+        wavWriter.close();
+
+        keywordDetectedCallback = null;
+        featureDeque.clear();
+        if (melspectrogramBuffer != null) melspectrogramBuffer.clear(); // null if loading failed
+        rawDataBuffer = null;
+
+        isListening = false;
+        //Log.d(TAG, "KeyWordsDetection close() completed.");
+    }
+
+    // Plans and sessions (KWS + melspec); also what a failed loadModels() had created so far.
+    private void releaseModels() {
+        closeKwsPlans();
         if (sessions != null) {
             for (int i = 0; i < sessions.length; i++) {
                 if (sessions[i] != null) {
@@ -359,21 +721,6 @@ try {
             try { melspecSession.close(); } catch (Exception ignored) {}
             melspecSession = null;
         }
-        if (env != null) {
-            try { env.close(); } catch (Exception ignored) {}
-            env = null;
-        }
-
-        keyWordDetectionThread = null;
-        VADThread = null;
-
-        keywordDetectedCallback = null;
-        featureDeque.clear();
-        melspectrogramBuffer.clear();
-        rawDataBuffer = null;
-
-        isListening = false;
-        //Log.d(TAG, "KeyWordsDetection close() completed.");
     }
 
     public String getKeywordDetectionModel() {
@@ -457,6 +804,9 @@ try {
         return false;
     }
 
+    // The clip of the last detection. With async detection events (or a post-roll) the keyword
+    // callback fires before that clip is written, so inside the callback this still returns the
+    // previous one: wait for the capture callback, which runs once the WAV is on disk.
     public String getRecordingWav() {
         return searchAndCopyFileToExternalStorage(lastFile);
     }
@@ -471,14 +821,127 @@ try {
                 );
     }
 
+    // Hot swap on the calling thread: detection keeps running on the old models while the new
+    // ones are built and warmed; see replaceKeywordDetectionModelAsync(). Called from the keyword
+    // callback (inside a frame), the swap is queued instead and published after that frame.
     public void replaceKeywordDetectionModel(Context context, String[] modelPaths, float[] thresholds, int[] bufferCnts, long[] msBetweenCallback)
         throws OrtException, SecurityException {
-        //Log.d(TAG, "replaceKeywordDetectionModel()");
-        this.keyThreasholds = thresholds;
-        this.keyBufferCnts = bufferCnts;
-        this.msBetweenCallbacks = msBetweenCallback;
+        validateModelNames(modelPaths);
+        if (Thread.holdsLock(modelLock)) {
+            replaceKeywordDetectionModelAsync(context, modelPaths, thresholds, bufferCnts, msBetweenCallback);
+            return;
+        }
+        swapModels(context, modelPaths, thresholds, bufferCnts, msBetweenCallback);
+    }
 
-        // === Model name validation ===
+    // Builds the new sessions in the background with the startup session options, warms them,
+    // then publishes them between two frames (or bulk scans) together with thresholds, buffer
+    // counts and callback spacing; the old sessions are closed once that frame has finished.
+    // Swaps run in call order. The future completes with the swap timings.
+    public CompletableFuture<ModelSwapStats> replaceKeywordDetectionModelAsync(Context context, String[] modelPaths,
+            float[] thresholds, int[] bufferCnts, long[] msBetweenCallback) throws SecurityException {
+        validateModelNames(modelPaths);
+        CompletableFuture<ModelSwapStats> future = new CompletableFuture<>();
+        synchronized (modelLock) {
+            if (swapExecutor == null) {
+                swapExecutor = Executors.newSingleThreadExecutor(r -> {
+                    Thread t = new Thread(r, "kws-swap");
+                    t.setDaemon(true);
+                    return t;
+                });
+            }
+            lastSwap = future;
+            swapExecutor.execute(() -> {
+                try {
+                    future.complete(swapModels(context, modelPaths, thresholds, bufferCnts, msBetweenCallback));
+                } catch (Throwable t) {
+                    Log.e(TAG, "model swap failed", t);
+                    future.completeExceptionally(t);
+                }
+            });
+        }
+        return future;
+    }
+
+    // Timings of the last completed model swap, or null.
+    public ModelSwapStats getLastModelSwapStats() {
+        return lastSwapStats;
+    }
+
+    public static class ModelSwapStats {
+        public long buildMs;           // assets + session creation + plans
+        public long warmupMs;          // first run of every new model
+        public long publishWaitMs;     // waiting for the frame / bulk scan in flight to finish
+        public long publishMs;         // frames are held back this long while the new set is installed
+        public long retireMs;          // closing the old sessions
+        public long totalMs;
+        public long framesDuringSwap;  // frames scored by the old models while the swap ran
+        public long framesHeldBack;    // frames that arrived during publish and waited for it
+        public String sessionTimings = "";
+
+        @Override
+        public String toString() {
+            return "total=" + totalMs + " ms (build=" + buildMs + ", warmup=" + warmupMs +
+                    ", publishWait=" + publishWaitMs + ", publish=" + publishMs + ", retire=" + retireMs +
+                    "), framesDuringSwap=" + framesDuringSwap + ", framesHeldBack=" + framesHeldBack +
+                    " [" + sessionTimings + "]";
+        }
+    }
+
+    // One complete KWS model set; built off the detection path, then swapped in by publishModelSet.
+    private static final class KwsModelSet {
+        final OrtSession[] sessions;
+        final KwsModelPlan[] plans;
+        final List<String>[] inputNames;
+        final int[] nFeatureFrames;
+        final String[] names;
+        final String[] paths;
+        float[] thresholds;
+        float[] fakeThresholds;
+        int[] bufferCnts;
+        long[] msBetweenCallbacks;
+        float[][] silenceWindow; // window silenceScores were computed on
+        float[] silenceScores;
+
+        @SuppressWarnings("unchecked")
+        KwsModelSet(int n) {
+            sessions = new OrtSession[n];
+            plans = new KwsModelPlan[n];
+            inputNames = new ArrayList[n];
+            nFeatureFrames = new int[n];
+            names = new String[n];
+            paths = new String[n];
+        }
+
+        KwsModelSet(OrtSession[] sessions, KwsModelPlan[] plans) {
+            this.sessions = sessions;
+            this.plans = plans;
+            this.inputNames = null;
+            this.nFeatureFrames = null;
+            this.names = null;
+            this.paths = null;
+        }
+
+        void close() {
+            if (plans != null) {
+                for (KwsModelPlan plan : plans) {
+                    if (plan != null) plan.close();
+                }
+            }
+            if (sessions != null) {
+                for (int i = 0; i < sessions.length; i++) {
+                    if (sessions[i] == null) continue;
+                    try {
+                        sessions[i].close();
+                    } catch (Exception e) {
+                        Log.w("KeyWordsDetection", "Failed to close session[" + i + "]: " + e.getMessage());
+                    }
+                }
+            }
+        }
+    }
+
+    private void validateModelNames(String[] modelPaths) throws SecurityException {
         for (String path : modelPaths) {
             String name = path.substring(path.lastIndexOf('/') + 1).toLowerCase(Locale.ROOT);
             if (!(name.contains("hey_plex") || name.contains("hey_perplexity"))) {
@@ -486,72 +949,155 @@ try {
                 throw new SecurityException("Unauthorized usage of DaVoice license! please contact info@davoice.io");
             }
         }
+    }
+
+    private ModelSwapStats swapModels(Context context, String[] modelPaths, float[] thresholds, int[] bufferCnts,
+                                      long[] msBetweenCallback) throws OrtException {
+        if (!ready) {
+            // still loading (createAsync): swap the models that loading produced
+            try {
+                readyFuture.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new OrtException("Interrupted while waiting for the detector to load");
+            } catch (ExecutionException e) {
+                throw new OrtException("Detector failed to load: " + e.getCause());
+            }
+        }
+        ModelSwapStats stats = new ModelSwapStats();
+        long t0 = System.nanoTime();
+        long framesBefore = framesProcessed;
+        long heldBackBefore = framesHeldBack.get();
+
+        KwsModelSet next = buildModelSet(context, modelPaths, thresholds, bufferCnts, msBetweenCallback, stats);
+
+        KwsModelSet old;
+        long tWait = System.nanoTime();
+        synchronized (modelLock) {
+            long tLocked = System.nanoTime();
+            if (env == null) { // closed while the new set was built
+                next.close();
+                throw new OrtException("Detector closed during model swap");
+            }
+            swapPublishing = true;
+            try {
+                old = publishModelSet(next);
+            } finally {
+                swapPublishing = false;
+            }
+            stats.framesDuringSwap = framesProcessed - framesBefore;
+            stats.publishWaitMs = (tLocked - tWait) / 1_000_000L;
+            stats.publishMs = (System.nanoTime() - tLocked) / 1_000_000L;
+        }
+        stats.framesHeldBack = framesHeldBack.get() - heldBackBefore;
+
+        // no frame or scan is running on the old set any more (they all hold modelLock)
+        long tRetire = System.nanoTime();
+        old.close();
+        long tEnd = System.nanoTime();
+        stats.retireMs = (tEnd - tRetire) / 1_000_000L;
+        stats.totalMs = (tEnd - t0) / 1_000_000L;
+        lastSwapStats = stats;
+        Log.i(TAG, "model swap: " + stats);
+        return stats;
+    }
 
+    // Assets -> sessions (startup options, optimized model cache) -> plans -> warmup, without
+    // touching the live model state.
+    private KwsModelSet buildModelSet(Context context, String[] modelPaths, float[] thresholds, int[] bufferCnts,
+                                      long[] msBetweenCallback, ModelSwapStats stats) throws OrtException {
+        long t0 = System.nanoTime();
         int numModels = modelPaths.length;
-        fakeThresholds = new float[numModels];
-        lastCallbackInMS = new long[numModels];
-        concurrentPredictions = new int[numModels];
+        KwsModelSet set = new KwsModelSet(numModels);
+        set.thresholds = thresholds;
+        set.bufferCnts = bufferCnts;
+        set.msBetweenCallbacks = msBetweenCallback;
+        set.fakeThresholds = new float[numModels];
         for (int i = 0; i < numModels; i++) {
-            fakeThresholds[i] = thresholds[i] - 0.1f;
-            lastCallbackInMS[i] = 0;
-            concurrentPredictions[i] = 0;
+            set.fakeThresholds[i] = thresholds[i] - 0.1f;
         }
-        strippedModelNames = new String[modelPaths.length];
-        internalModelPaths = new String[modelPaths.length];
 
-        for (int i = 0; i < modelPaths.length; i++) {
+        for (int i = 0; i < numModels; i++) {
             String name = modelPaths[i];
             name = name.substring(name.lastIndexOf('/') + 1);
             name = name.replaceFirst("[.][^.]+$", "");
-            strippedModelNames[i] = name;
+            set.names[i] = name;
 
-            internalModelPaths[i] = copyAssetToInternalStorage(modelPaths[i]);
-            if (internalModelPaths[i] == null) {
+            set.paths[i] = assetExists(modelPaths[i]) ? resolveModelSource(modelPaths[i]) : null;
+            if (set.paths[i] == null) {
                 Log.e(TAG, "replaceKeywordDetectionModel(): Model path is null after copying asset.");
                 throw new OrtException("Failed to copy model asset to internal storage.");
             }
         }
 
-        if (sessions != null) {
-            for (int i = 0; i < sessions.length; i++) {
-                if (sessions[i] != null) {
-                    try {
-                        sessions[i].close();
-                    } catch (Exception e) {
-                        Log.w(TAG, "Failed to close session[" + i + "]: " + e.getMessage());
-                    }
-                    sessions[i] = null;
-                }
-            }
-        }
-
+        StringBuilder timings = new StringBuilder();
+        OrtEnvironment ortEnv = OrtEnvironment.getEnvironment();
         try {
-            //Log.d(TAG, "KeyWordsDetection constructor: Models: " + Arrays.toString(modelPaths));
-            env = OrtEnvironment.getEnvironment();
-            OrtSession.SessionOptions options = new OrtSession.SessionOptions();
-            options.setInterOpNumThreads(1);
-            options.setIntraOpNumThreads(1);
-            sessions = new OrtSession[modelPaths.length];
-            for (int i = 0; i < modelPaths.length; i++) {
-                sessions[i] = env.createSession(internalModelPaths[i], options);
-                inputNames[i] = new ArrayList<>(sessions[i].getInputNames());
-                Map<String, NodeInfo> inputInfoMap = sessions[i].getInputInfo();
-                NodeInfo inputInfo = inputInfoMap.get(inputNames[i].get(0));
+            for (int i = 0; i < numModels; i++) {
+                set.sessions[i] = ModelLoader.createCachedSession(ortEnv, context, set.paths[i],
+                        this::buildSessionOptions, timings);
+                set.inputNames[i] = new ArrayList<>(set.sessions[i].getInputNames());
+                Map<String, NodeInfo> inputInfoMap = set.sessions[i].getInputInfo();
+                NodeInfo inputInfo = inputInfoMap.get(set.inputNames[i].get(0));
                 TensorInfo tensorInfo = (TensorInfo) inputInfo.getInfo();
                 long[] shape = tensorInfo.getShape();
-                nFeatureFrames[i] = (int) shape[1];
-                //Log.d(TAG, "Model [" + strippedModelNames[i] + "] nFeatureFrames: " + nFeatureFrames[i]);
+                set.nFeatureFrames[i] = (int) shape[1];
+                set.plans[i] = KwsModelPlan.create(ortEnv, set.sessions[i], set.inputNames[i].get(0));
             }
-
-        } catch (OrtException e) {
-            e.printStackTrace();
+            long tWarm = System.nanoTime();
+            stats.buildMs = (tWarm - t0) / 1_000_000L;
+
+            // the first run allocates arenas / EP state; the silence window doubles as warmup input
+            float[][] window = silenceWindow;
+            float[][] probe = (window != null) ? window : new float[MEL_WINDOW_FRAMES][MEL_BINS];
+            float[] scores = new float[numModels];
+            for (int i = 0; i < numModels; i++) {
+                scores[i] = set.plans[i].score(probe);
+            }
+            set.silenceWindow = window;
+            set.silenceScores = (window != null) ? scores : null;
+            stats.warmupMs = (System.nanoTime() - tWarm) / 1_000_000L;
+        } catch (OrtException | RuntimeException e) {
+            set.close();
             throw e;
         }
+        stats.sessionTimings = timings.toString();
+        return set;
+    }
+
+    // Install `next` as the live model set (caller holds modelLock); returns the old one to close.
+    private KwsModelSet publishModelSet(KwsModelSet next) {
+        KwsModelSet old = new KwsModelSet(sessions, kwsPlans);
+        int numModels = next.sessions.length;
+        endIncrementalScan(null); // cached scores belong to the old models
+
+        keyThreasholds = next.thresholds;
+        keyBufferCnts = next.bufferCnts;
+        msBetweenCallbacks = next.msBetweenCallbacks;
+        fakeThresholds = next.fakeThresholds;
+        lastCallbackInMS = new long[numModels];
+        concurrentPredictions = new int[numModels];
+        perModellPredictions = new int[numModels];
+        strippedModelNames = next.names;
+        internalModelPaths = next.paths;
+        inputNames = next.inputNames;
+        nFeatureFrames = next.nFeatureFrames;
+        kwsBatchUnsupported = new boolean[numModels];
+        sessions = next.sessions;
+        kwsPlans = next.plans;
+
+        if (silenceWindow == next.silenceWindow) {
+            silenceWindowScores = next.silenceScores;
+        } else {
+            buildSilenceScores(); // the mel frontend changed while the set was built
+        }
+        if (kwsParallelMax > 0) setParallelModels(kwsParallelMax); // model count changed
+        return old;
     }
 
     public void printMelspectrogramBuffer() {
         int numRows = melspectrogramBuffer.size();
-        int numCols = numRows > 0 ? melspectrogramBuffer.get(0).length : 0;
+        int numCols = numRows > 0 ? melspectrogramBuffer.bins() : 0;
     }
 
     private String copyAssetToInternalStorage_v1(String assetName) {
@@ -586,76 +1132,22 @@ try {
         return file.getAbsolutePath();
     }
 
+    // Extracted once per APK version (plus any .onnx.data sidecar); see ModelAssetCache.
     private String copyAssetToInternalStorage(String assetName) {
-        File file = new File(context.getFilesDir(), assetName);
-        File parentFile = file.getParentFile();
-        if (!parentFile.exists()) {
-            boolean dirsCreated = parentFile.mkdirs();
-        }
-
-        if (file.exists()) {
-            boolean deleted = file.delete();
-            //Log.d(TAG, "Existing asset deleted: " + deleted);
-        }
-
-        AssetManager assetManager = context.getAssets();
-
-        // 1) Copy the main asset (e.g. hey_plex.onnx)
-        if (!file.exists()) {
-            try {
-                InputStream in = assetManager.open(assetName);
-                FileOutputStream out = new FileOutputStream(file);
-                byte[] buffer = new byte[1024];
-                int read;
-                while ((read = in.read(buffer)) != -1) {
-                    out.write(buffer, 0, read);
-                }
-                in.close();
-                out.close();
-            } catch (IOException e) {
-                Log.e(TAG, "Failed to copy asset file: " + assetName, e);
-                return null;
-            }
-        }
-
-        // 2) If this is an ONNX file, also copy the external data file "<name>.onnx.data" if it exists.
-        //    ONNX Runtime will automatically pick it up as long as it sits next to the .onnx.
-        if (assetName.endsWith(".onnx")) {
-            String dataAssetName = assetName + ".data";  // e.g. "hey_plex.onnx.data" or "models/hey_plex.onnx.data"
-            if (assetExists(dataAssetName)) {
-                File dataFile = new File(context.getFilesDir(), dataAssetName);
-                File dataParent = dataFile.getParentFile();
-                if (!dataParent.exists()) {
-                    boolean created = dataParent.mkdirs();
-                }
-
-                if (dataFile.exists()) {
-                    boolean deletedData = dataFile.delete();
-                    //Log.d(TAG, "Existing .onnx.data deleted: " + deletedData);
-                }
+        return ModelAssetCache.extractModel(context, assetName);
+    }
 
-                try {
-                    InputStream din = assetManager.open(dataAssetName);
-                    FileOutputStream dout = new FileOutputStream(dataFile);
-                    byte[] dbuf = new byte[1024];
-                    int dread;
-                    while ((dread = din.read(dbuf)) != -1) {
-                        dout.write(dbuf, 0, dread);
-                    }
-                    din.close();
-                    dout.close();
-                    //Log.d(TAG, "Copied ONNX external data asset: " + dataAssetName);
-                } catch (IOException e) {
-                    Log.e(TAG, "Failed to copy ONNX .data asset file: " + dataAssetName, e);
-                    // We don't return null here because the main .onnx is present; you can decide how strict you want to be.
-                }
-            } else {
-                // Optional: log if .data is missing; ORT will still work if the model is not using external data.
-                //Log.d(TAG, "No ONNX .data asset found for: " + assetName);
-            }
-        }
+    // Where a model is loaded from: the asset name itself in memory mode, else the extracted
+    // file. Paths that are not assets are used as they are.
+    private String resolveModelSource(String model) {
+        if (!assetExists(model)) return model;
+        return loadModelsFromMemory ? model : copyAssetToInternalStorage(model);
+    }
 
-        return file.getAbsolutePath();
+    // Load asset models from memory instead of extracting them to files first. Applies to
+    // detectors created (and models replaced) afterwards; models with .onnx.data still use a file.
+    public static void setLoadModelsFromMemory(boolean enabled) {
+        loadModelsFromMemory = enabled;
     }
 
     public void initialize(BiConsumer<Boolean, String> callback) {
@@ -667,60 +1159,272 @@ try {
     }
 
     public void storeFrame(short[] frame, int frameLength) {
-        int remainingSpace = LAST_SEC_BUFF_SIZE - bufferPosition;
-        if (frameLength > remainingSpace) {
-            bufferPosition = 0;
+        short[] ring = audioBuffer;
+        int n = ring.length;
+        int pos = bufferPosition % n;
+        if (frameLength >= n) {
+            System.arraycopy(frame, frameLength - n, ring, 0, n);
+            pos = 0;
+        } else {
+            int first = Math.min(frameLength, n - pos);
+            System.arraycopy(frame, 0, ring, pos, first);
+            System.arraycopy(frame, first, ring, 0, frameLength - first);
+            pos = (pos + frameLength) % n;
         }
-        System.arraycopy(frame, 0, audioBuffer, bufferPosition, frameLength);
-        bufferPosition += frameLength;
+        bufferPosition = pos;
+        if (hasPendingCaptures) appendPostRoll(frame, frameLength);
     }
 
     public void flushBufferToWav(String fileName) throws IOException {
+        writeClipToWav(fileName, audioBuffer, bufferPosition, audioBuffer.length);
+    }
+
+    // WAV of `samples` samples of ring (oldest at ring[position]) to fileName in the app files dir.
+    private void writeClipToWav(String fileName, short[] ring, int position, int samples) throws IOException {
         File file = new File(context.getFilesDir(), fileName);
         //Log.d(TAG, "Saving WAV file: " + fileName);
-
-        try (FileOutputStream fos = new FileOutputStream(file);
-             ByteArrayOutputStream baos = new ByteArrayOutputStream();
-             DataOutputStream dos = new DataOutputStream(baos)) {
-
-            int sampleRate = SAMPLE_RATE;
-            int numChannels = 1;
-            int bitsPerSample = 16;
-            int byteRate = sampleRate * numChannels * (bitsPerSample / 8);
-
-            dos.writeBytes("RIFF");
-            dos.writeInt(Integer.reverseBytes(36 + LAST_SEC_BUFF_SIZE * 2));
-            dos.writeBytes("WAVE");
-            dos.writeBytes("fmt ");
-            dos.writeInt(Integer.reverseBytes(16));
-            dos.writeShort(Short.reverseBytes((short) 1));
-            dos.writeShort(Short.reverseBytes((short) numChannels));
-            dos.writeInt(Integer.reverseBytes(sampleRate));
-            dos.writeInt(Integer.reverseBytes(byteRate));
-            dos.writeShort(Short.reverseBytes((short) (numChannels * (bitsPerSample / 8))));
-            dos.writeShort(Short.reverseBytes((short) bitsPerSample));
-            dos.writeBytes("data");
-            dos.writeInt(Integer.reverseBytes(LAST_SEC_BUFF_SIZE * 2));
-
-            byte[] byteBuffer = new byte[LAST_SEC_BUFF_SIZE * 2];
-            for (int i = 0; i < LAST_SEC_BUFF_SIZE; i++) {
-                int bufferIndex = (bufferPosition + i) % LAST_SEC_BUFF_SIZE;
-                byteBuffer[i * 2] = (byte) (audioBuffer[bufferIndex] & 0x00FF);
-                byteBuffer[i * 2 + 1] = (byte) ((audioBuffer[bufferIndex] >> 8) & 0x00FF);
-            }
-            dos.write(byteBuffer, 0, LAST_SEC_BUFF_SIZE * 2);
-
-            fos.write(baos.toByteArray());
-            lastFile = fileName;
+        try {
+            File written = wavWriter.writeRing(file, ring, position, samples);
+            lastFile = written.getName();
             //Log.d(TAG, "lastFile: " + lastFile);
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
-
-    public void ignoreBatteryOptimization() {
-        Intent intent = new Intent(Settings.ACTION_REQUEST_IGNORE_BATTERY_OPTIMIZATIONS, Uri.parse("package:" + context.getPackageName()));
+    // Capture detections into one pre-sized memory-mapped WAV in the app files dir, rewritten
+    // in place on every detection (null: one regular file per model, as before).
+    public boolean setMappedCaptureFile(String fileName) {
+        try {
+            wavWriter.setMappedFile(fileName == null ? null : new File(context.getFilesDir(), fileName));
+            mappedCaptureName = fileName;
+            return true;
+        } catch (IOException e) {
+            Log.w(TAG, "setMappedCaptureFile: " + e.getMessage());
+            return false;
+        }
+    }
+
+    // Capture clip = preRollMs before the detection + postRollMs after it. With a post-roll the
+    // keyword callback still fires at detection time; the clip is completed from the following
+    // stored frames and then written (and handed to the capture callback). Bulk scans cut the whole
+    // clip from the scanned buffer, silence-padded past its ends. Resets the pre-roll ring.
+    public synchronized boolean setCaptureDurations(int preRollMs, int postRollMs) {
+        int pre = Math.max(1, (int) ((long) preRollMs * SAMPLE_RATE / 1000));
+        int post = Math.max(0, (int) ((long) postRollMs * SAMPLE_RATE / 1000));
+        synchronized (pendingCaptures) {
+            for (CaptureJob job : pendingCaptures) releaseSnapshot(job.clip);
+            pendingCaptures.clear();
+            hasPendingCaptures = false;
+        }
+        synchronized (snapshotPool) {
+            snapshotPool.clear();
+        }
+        audioBuffer = new short[pre];
+        bufferPosition = 0;
+        postRollSamples = post;
+
+        WavWriter old = wavWriter;
+        wavWriter = new WavWriter(SAMPLE_RATE, pre + post);
+        old.close();
+        if (mappedCaptureName != null) return setMappedCaptureFile(mappedCaptureName);
+        return true;
+    }
+
+    // Receives each complete capture clip (model name, samples) after its WAV is written, so
+    // getRecordingWav() returns this clip from here on. The array is pooled and only valid during
+    // the call: copy it to keep it.
+    public void setCaptureCallback(BiConsumer<String, short[]> callback) {
+        this.captureCallback = callback;
+    }
+
+    // Detection side effects off the inference thread, callback first and WAV after it (false, the
+    // default: inline, WAV first, then the callback). When enabled, getRecordingWav() is not valid
+    // inside the keyword callback; use the capture callback to learn when the clip is available.
+    // maxPending bounds the queued events; older snapshots are never overwritten.
+    public synchronized void setAsyncDetectionEvents(boolean enabled, int maxPending) {
+        shutdownDetectionExecutor();
+        maxPendingDetections = Math.max(1, maxPending);
+        asyncDetectionEvents = enabled;
+    }
+
+    // WAV writes dropped because the detection queue was full.
+    public int getDroppedDetectionWrites() {
+        return droppedDetectionWrites.get();
+    }
+
+    // A detection clip: pre-roll copied at detection time, post-roll appended by storeFrame().
+    private static final class CaptureJob {
+        final String fileName;
+        final String modelName;
+        final short[] clip;
+        int filled;
+
+        CaptureJob(String fileName, String modelName, short[] clip, int filled) {
+            this.fileName = fileName;
+            this.modelName = modelName;
+            this.clip = clip;
+            this.filled = filled;
+        }
+    }
+
+    // Report a detection of modelName: the capture clip (WAV + capture callback) and the keyword
+    // callback. Inline, the WAV is written first so the callback can read it; async, the callback
+    // goes first. With a post-roll the callback fires now and the clip once it is complete.
+    private void dispatchDetection(String fileName, String modelName) {
+        final BiConsumer<Boolean, String> callback = keywordDetectedCallback;
+        short[] ring = audioBuffer;
+        int n = ring.length;
+        int pos = bufferPosition % n;
+        final CaptureJob job;
+        if (bulkCapturePcm != null) {
+            int samples = n + postRollSamples;
+            job = new CaptureJob(fileName, modelName, acquireSnapshot(samples), samples);
+            copyPadded(bulkCapturePcm, bulkCaptureLength, bulkHitEnd - n, job.clip);
+        } else {
+            job = new CaptureJob(fileName, modelName, acquireSnapshot(n + postRollSamples), n);
+            System.arraycopy(ring, pos, job.clip, 0, n - pos);
+            System.arraycopy(ring, 0, job.clip, n - pos, pos);
+        }
+
+        if (job.filled < job.clip.length) {
+            runDetectionEvent(() -> deliverKeywordCallback(callback, modelName),
+                    () -> deliverKeywordCallback(callback, modelName));
+            synchronized (pendingCaptures) {
+                pendingCaptures.add(job);
+                hasPendingCaptures = true;
+            }
+            return;
+        }
+        if (!asyncDetectionEvents) {
+            finishCapture(job);
+            deliverKeywordCallback(callback, modelName);
+            return;
+        }
+        runDetectionEvent(() -> {
+            deliverKeywordCallback(callback, modelName);
+            finishCapture(job);
+        }, () -> {
+            dropCapture(job);
+            deliverKeywordCallback(callback, modelName);
+        });
+    }
+
+    // dst = pcm[start .. start + dst.length), zeros where that range lies outside pcm[0 .. length).
+    private static void copyPadded(short[] pcm, int length, int start, short[] dst) {
+        Arrays.fill(dst, (short) 0);
+        int from = Math.max(0, start);
+        int to = Math.min(length, start + dst.length);
+        if (to > from) System.arraycopy(pcm, from, dst, from - start, to - from);
+    }
+
+    // Post-roll: feed a stored frame to the open captures and emit the ones that are complete.
+    private void appendPostRoll(short[] frame, int frameLength) {
+        List<CaptureJob> done = null;
+        synchronized (pendingCaptures) {
+            for (Iterator<CaptureJob> it = pendingCaptures.iterator(); it.hasNext(); ) {
+                CaptureJob job = it.next();
+                int n = Math.min(frameLength, job.clip.length - job.filled);
+                System.arraycopy(frame, 0, job.clip, job.filled, n);
+                job.filled += n;
+                if (job.filled == job.clip.length) {
+                    it.remove();
+                    if (done == null) done = new ArrayList<>(1);
+                    done.add(job);
+                }
+            }
+            hasPendingCaptures = !pendingCaptures.isEmpty();
+        }
+        if (done == null) return;
+        for (CaptureJob job : done) {
+            runDetectionEvent(() -> finishCapture(job), () -> dropCapture(job));
+        }
+    }
+
+    // Run on the detection-event thread, or inline when async events are off; onRejected runs
+    // inline when the queue is full.
+    private void runDetectionEvent(Runnable event, Runnable onRejected) {
+        ThreadPoolExecutor ex = asyncDetectionEvents ? detectionExecutor() : null;
+        if (ex == null) {
+            event.run();
+            return;
+        }
+        try {
+            ex.execute(event);
+        } catch (RejectedExecutionException e) {
+            onRejected.run();
+        }
+    }
+
+    private void deliverKeywordCallback(BiConsumer<Boolean, String> callback, String modelName) {
+        if (callback == null) return;
+        try {
+            callback.accept(true, modelName);
+        } catch (RuntimeException e) {
+            Log.e(TAG, "keyword callback failed", e);
+        }
+    }
+
+    private void finishCapture(CaptureJob job) {
+        try {
+            writeClipToWav(job.fileName, job.clip, 0, job.filled);
+            BiConsumer<String, short[]> cb = captureCallback;
+            if (cb != null) cb.accept(job.modelName, job.clip);
+        } catch (IOException | RuntimeException e) {
+            Log.w(TAG, "detection capture failed: " + e.getMessage());
+        } finally {
+            releaseSnapshot(job.clip);
+        }
+    }
+
+    private void dropCapture(CaptureJob job) {
+        releaseSnapshot(job.clip);
+        int dropped = droppedDetectionWrites.incrementAndGet();
+        Log.w(TAG, "detection queue full, dropping WAV " + job.fileName + " (" + dropped + " dropped)");
+    }
+
+    private synchronized ThreadPoolExecutor detectionExecutor() {
+        if (detectionExecutor == null) {
+            detectionExecutor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<Runnable>(maxPendingDetections), r -> {
+                        Thread t = new Thread(r, "kws-detection-events");
+                        t.setDaemon(true);
+                        return t;
+                    }, new ThreadPoolExecutor.AbortPolicy());
+        }
+        return detectionExecutor;
+    }
+
+    private synchronized void shutdownDetectionExecutor() {
+        ThreadPoolExecutor ex = detectionExecutor;
+        detectionExecutor = null;
+        if (ex == null) return;
+        ex.shutdown();
+        try {
+            if (!ex.awaitTermination(2, TimeUnit.SECONDS)) {
+                Log.w(TAG, "shutdownDetectionExecutor: pending detection events abandoned");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private short[] acquireSnapshot(int samples) {
+        synchronized (snapshotPool) {
+            short[] buf = snapshotPool.poll();
+            return (buf != null && buf.length == samples) ? buf : new short[samples];
+        }
+    }
+
+    private void releaseSnapshot(short[] buf) {
+        synchronized (snapshotPool) {
+            if (snapshotPool.size() <= maxPendingDetections) snapshotPool.push(buf);
+        }
+    }
+
+
+    public void ignoreBatteryOptimization() {
+        Intent intent = new Intent(Settings.ACTION_REQUEST_IGNORE_BATTERY_OPTIMIZATIONS, Uri.parse("package:" + context.getPackageName()));
         intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
         context.startActivity(intent);
     }
@@ -738,6 +1442,13 @@ private void warmupModels() {
             return;
         }
 
+        // Derive melspec framing once and check the bulk path against per-chunk melspec
+        if (!bulkMelChecked) {
+            bulkMelChecked = true;
+            verifyBulkMelParity();
+            buildSilenceCache();
+        }
+
         // Warm up each KWS ONNX session once
         if (sessions != null) {
             for (int i = 0; i < sessions.length; i++) {
@@ -755,6 +1466,18 @@ private void warmupModels() {
 }
 
     public void startListeningExternalAudio(float threshold) {
+        synchronized (pendingLock) {
+            if (!ready) {
+                // applied by finishInit() once the models are loaded
+                startDeferred = true;
+                deferredThreshold = threshold;
+                return;
+            }
+        }
+        startListeningExternalAudioNow(threshold);
+    }
+
+    private void startListeningExternalAudioNow(float threshold) {
         if (isListening) {
             //Log.d(TAG, "Already listening");
             return;
@@ -772,23 +1495,24 @@ private void warmupModels() {
             inputs = new HashMap<>();
 
             if (rawDataBuffer != null) rawDataBuffer.clear();
-            rawDataBuffer = null;
-            rawDataBuffer = new ArrayDeque<>(RAW_BUFFER_MAX_LEN);
+            else rawDataBuffer = new ShortRingBuffer(RAW_BUFFER_MAX_LEN);
 
             Arrays.fill(audioBuffer, (short) 0);
             bufferPosition = 0;
+            synchronized (pendingCaptures) {
+                for (CaptureJob job : pendingCaptures) releaseSnapshot(job.clip);
+                pendingCaptures.clear();
+                hasPendingCaptures = false;
+            }
 
             if (melspectrogramBuffer != null) melspectrogramBuffer.clear();
-            else melspectrogramBuffer = new ArrayList<>();
-            for (int i = 0; i < 76; i++) {
-                float[] row = new float[32];
-                Arrays.fill(row, 1.0f);
-                melspectrogramBuffer.add(row);
-            }
+            else melspectrogramBuffer = new MelFrameRing(MEL_SPECTROGRAM_MAX_LEN, MEL_BINS);
+            melspectrogramBuffer.fill(MEL_WINDOW_FRAMES, 1.0f);
             printMelspectrogramBuffer();
 
             // bulk head state
             bulkWindows.clear();
+            endIncrementalScan(null);
             bulkCollecting = false;
 
             featureDeque.clear();
@@ -801,6 +1525,7 @@ private void warmupModels() {
             warmupModels();
 
             extCarryLen = 0;
+            resetVADGate();
 
             //Log.d(TAG, "startListeningExternalAudio(): init complete");
             //Log.d(TAG, "keyThreasholds: " + Arrays.toString(keyThreasholds));
@@ -811,6 +1536,341 @@ private void warmupModels() {
         }
     }
 
+    // Streaming push API: feed any number of samples; they are cut into FRAME_LENGTH frames (the
+    // remainder is carried to the next push) and each frame runs through the streaming KWS path.
+    // Returns true if any keyword fired during this push.
+    public boolean pushExternalAudio(short[] pcm, int length) {
+        if (!ready || pendingAudio != null) {
+            if (pcm == null || length <= 0) return false;
+            synchronized (pendingLock) {
+                if (!ready) {
+                    holdPendingAudio(pcm, length);
+                    return false;
+                }
+            }
+            return drainPendingAudio(pcm, length);
+        }
+        return pushExternalAudioReady(pcm, length);
+    }
+
+    // Audio from before ready: kept (BUFFER) or dropped (REJECT). Caller holds pendingLock.
+    private void holdPendingAudio(short[] pcm, int length) {
+        if (pendingPolicy != PendingAudioPolicy.BUFFER) {
+            rejectedPendingSamples += length;
+            return;
+        }
+        if (pendingAudio == null) pendingAudio = new ShortRingBuffer(PENDING_AUDIO_MAX_SAMPLES);
+        if (pendingAudio.size() + length > PENDING_AUDIO_MAX_SAMPLES) {
+            rejectedPendingSamples += Math.min(length, pendingAudio.size() + length - PENDING_AUDIO_MAX_SAMPLES);
+        }
+        pendingAudio.write(pcm, 0, length);
+    }
+
+    // First push after ready: the buffered audio, then this push.
+    private boolean drainPendingAudio(short[] pcm, int length) {
+        short[] held = null;
+        synchronized (pendingLock) {
+            if (pendingAudio != null) {
+                held = new short[pendingAudio.size()];
+                pendingAudio.readLast(held.length, held, 0);
+                pendingAudio = null;
+            }
+        }
+        boolean detected = false;
+        if (held != null && held.length > 0) {
+            Log.d(TAG, "pushExternalAudio: processing " + held.length + " samples received before ready");
+            detected = pushExternalAudioReady(held, held.length);
+        }
+        return pushExternalAudioReady(pcm, length) || detected;
+    }
+
+    // Samples dropped before ready (REJECT policy, or beyond the BUFFER capacity).
+    public long getRejectedPendingSamples() {
+        synchronized (pendingLock) {
+            return rejectedPendingSamples;
+        }
+    }
+
+    private boolean pushExternalAudioReady(short[] pcm, int length) {
+        if (!isListening || !isExternalMode.get() || pcm == null || length <= 0) return false;
+
+        final int FRAME = Constants.FRAME_LENGTH;
+        boolean detected = false;
+        int offset = 0;
+        while (isListening && offset < length) {
+            int take = Math.min(FRAME - extCarryLen, length - offset);
+            System.arraycopy(pcm, offset, extCarry, extCarryLen, take);
+            extCarryLen += take;
+            offset += take;
+            if (extCarryLen < FRAME) break;
+
+            extCarryLen = 0;
+            if (swapPublishing) framesHeldBack.incrementAndGet(); // about to wait for the publish
+            synchronized (modelLock) { // model swaps publish between frames
+                framesProcessed++;
+                storeFrame(extCarry, FRAME);
+                if (processGatedFrame(extCarry, FRAME)) {
+                    detected = true;
+                }
+            }
+        }
+        return detected;
+    }
+
+    // Optional VAD gating for pushExternalAudio(). vadModelAsset is the Silero VAD .onnx asset
+    // (only needed the first time). threshold -> VADThreshold, hangoverMs -> msWindow.
+    // Runs between frames (modelLock), so the gate state is never reset under a running frame.
+    public boolean setVADGating(boolean enabled, String vadModelAsset, float threshold, int hangoverMs) {
+        synchronized (modelLock) {
+            return setVADGatingLocked(enabled, vadModelAsset, threshold, hangoverMs);
+        }
+    }
+
+    private synchronized boolean setVADGatingLocked(boolean enabled, String vadModelAsset, float threshold, int hangoverMs) {
+        VADThreshold = threshold;
+        msWindow = Math.max(0, hangoverMs);
+        isVADListening = false;
+        if (!enabled) {
+            VadDetector vad = vadDetector;
+            if (vad != null) {
+                synchronized (vad) { // not while another caller is inside predict_2
+                    try {
+                        vad.close();
+                    } catch (Exception e) {
+                        Log.w(TAG, "setVADGating: failed to close VAD: " + e.getMessage());
+                    }
+                    vadDetector = null;
+                }
+            }
+            return true;
+        }
+        if (vadDetector == null) {
+            try {
+                if (vadModelAsset != null) {
+                    vadPath = copyAssetToInternalStorage(vadModelAsset);
+                }
+                if (vadPath == null) {
+                    Log.e(TAG, "setVADGating: no VAD model available");
+                    return false;
+                }
+                vadDetector = new VadDetector(context, vadPath);
+            } catch (Throwable t) {
+                Log.e(TAG, "setVADGating: failed to load VAD model", t);
+                vadDetector = null;
+                return false;
+            }
+        }
+        if (vadHistory == null) vadHistory = new ShortRingBuffer(VAD_PRIME_SAMPLES);
+        resetVADGate();
+        isVADListening = true;
+        return true;
+    }
+
+    // Called with no gated frame running (gating off, or before audio flows).
+    private void resetVADGate() {
+        vadSamplesSeen = 0;
+        vadLastSpeechSample = Long.MIN_VALUE;
+        kwsGated = true;
+        if (vadHistory != null) vadHistory.clear();
+        VadDetector vad = vadDetector;
+        if (vad != null) {
+            synchronized (vad) {
+                vad.reset();
+            }
+        }
+    }
+
+    private boolean processGatedFrame(short[] frame, int frameLength) {
+        VadDetector vad = vadDetector;
+        if (!isVADListening || vad == null) {
+            return processOneKwFrameV2(frame, frameLength);
+        }
+
+        float speechProb;
+        try {
+            synchronized (vad) {
+                speechProb = vad.predict_2(frame);
+            }
+        } catch (Throwable t) {
+            Log.w(TAG, "VAD failed, running KWS ungated for this frame: " + t.getMessage());
+            speechProb = 1.0f;
+        }
+        vadSamplesSeen += frameLength;
+        if (speechProb >= VADThreshold) {
+            vadLastSpeechSample = vadSamplesSeen;
+        }
+        long hangoverSamples = (long) msWindow * SAMPLE_RATE / 1000;
+        boolean active = vadLastSpeechSample != Long.MIN_VALUE
+                && vadSamplesSeen - vadLastSpeechSample <= hangoverSamples;
+
+        boolean detected = false;
+        if (!active) {
+            // silence: keep the raw buffers current, skip melspec + KWS
+            bufferRawData(frame);
+            kwsGated = true;
+        } else {
+            if (kwsGated) {
+                primeMelFromVadHistory();
+                kwsGated = false;
+            }
+            detected = processOneKwFrameV2(frame, frameLength);
+        }
+        vadHistory.write(frame, 0, frameLength);
+        return detected;
+    }
+
+    // Speech resumed after a gated stretch: rebuild the mel ring from the audio that preceded this
+    // frame, so the first KWS windows see the same frames an ungated run would have produced.
+    private void primeMelFromVadHistory() {
+        short[] history = new short[VAD_PRIME_SAMPLES];
+        int n = vadHistory.readLast(VAD_PRIME_SAMPLES, history, 0);
+        melspectrogramBuffer.clear();
+        melspectrogramBuffer.fill(MEL_WINDOW_FRAMES, 1.0f);
+        if (n < 400) return;
+
+        float[] audio = new float[n];
+        for (int i = 0; i < n; i++) audio[i] = history[i] * INV_SHORT_MAX;
+
+        float[][] mel;
+        LogMelFrontend frontend = javaMelFrontend;
+        if (frontend != null) {
+            mel = frontend.compute(audio, 0, n);
+            for (float[] row : mel) {
+                for (int j = 0; j < row.length; j++) row[j] = row[j] / 10 + 2;
+            }
+        } else {
+            mel = getMelspectrogram(audio, n);
+        }
+        melspectrogramBuffer.append(mel);
+    }
+
+    // v2 bulk VAD pre-scan: score only the windows that overlap speech (+/- marginMs).
+    // The pre-scan has its own VAD instance (from vadModelAsset, or the model setVADGating()
+    // loaded), so it never touches the streaming gate's state. Changes wait for a running scan.
+    public boolean setBulkVADPrescan(boolean enabled, String vadModelAsset, int marginMs) {
+        synchronized (modelLock) {
+            return setBulkVADPrescanLocked(enabled, vadModelAsset, marginMs);
+        }
+    }
+
+    private synchronized boolean setBulkVADPrescanLocked(boolean enabled, String vadModelAsset, int marginMs) {
+        bulkVadMarginMs = Math.max(0, marginMs);
+        if (!enabled) {
+            bulkVadPrescan = false;
+            if (bulkVadDetector != null) {
+                try {
+                    bulkVadDetector.close();
+                } catch (Exception e) {
+                    Log.w(TAG, "setBulkVADPrescan: failed to close VAD: " + e.getMessage());
+                }
+                bulkVadDetector = null;
+            }
+            return true;
+        }
+        if (bulkVadDetector == null) {
+            try {
+                if (vadModelAsset != null) {
+                    vadPath = copyAssetToInternalStorage(vadModelAsset);
+                }
+                if (vadPath == null) {
+                    Log.e(TAG, "setBulkVADPrescan: no VAD model available");
+                    return false;
+                }
+                bulkVadDetector = new VadDetector(context, vadPath);
+            } catch (Throwable t) {
+                Log.e(TAG, "setBulkVADPrescan: failed to load VAD model", t);
+                bulkVadDetector = null;
+                return false;
+            }
+        }
+        bulkVadPrescan = true;
+        return true;
+    }
+
+    // Score the loaded models of a window concurrently on up to maxThreads extra threads
+    // (<= 0 or a single model: serial). The pool is capped so that pool threads x intra-op
+    // threads per session stays within the core count. Hit handling is unchanged (model order).
+    // The pool is replaced between frames (modelLock); the old one is shut down after the swap.
+    public void setParallelModels(int maxThreads) {
+        ExecutorService old;
+        synchronized (modelLock) {
+            old = setParallelModelsLocked(maxThreads);
+        }
+        if (old != null) old.shutdown();
+    }
+
+    // Installs the new pool and returns the old one for the caller to shut down.
+    private synchronized ExecutorService setParallelModelsLocked(int maxThreads) {
+        kwsParallelMax = maxThreads;
+        ExecutorService old = kwsExecutor;
+        kwsExecutor = null;
+
+        int numModels = (sessions != null) ? sessions.length : 0;
+        int cores = Math.max(1, Runtime.getRuntime().availableProcessors());
+        // the caller thread scores one model itself
+        int threads = Math.min(maxThreads, numModels - 1);
+        threads = Math.min(threads, cores / Math.max(1, kwsIntraOpThreads) - 1);
+        if (threads <= 0) {
+            Log.i(TAG, "setParallelModels: serial scoring (models=" + numModels + ", cores=" + cores + ")");
+            return old;
+        }
+        final AtomicInteger seq = new AtomicInteger();
+        kwsExecutor = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "kws-model-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        Log.i(TAG, "setParallelModels: " + threads + " pool threads (+caller) for " + numModels + " models");
+        return old;
+    }
+
+    // v2 bulk scan on `workers` threads for buffers of at least 2 * minShardWindows windows
+    // (workers <= 1: serial). Detections match the serial scan: only scoring is parallel.
+    // The pool is replaced between bulk scans (modelLock); the old one is shut down after the swap.
+    public void setParallelBulkScan(int workers, int minShardWindows) {
+        ExecutorService old;
+        synchronized (modelLock) {
+            old = setParallelBulkScanLocked(workers, minShardWindows);
+        }
+        if (old != null) old.shutdown();
+    }
+
+    // Installs the new pool and returns the old one for the caller to shut down.
+    private synchronized ExecutorService setParallelBulkScanLocked(int workers, int minShardWindows) {
+        ExecutorService old = bulkScanExecutor;
+        bulkScanExecutor = null;
+
+        int cores = Math.max(1, Runtime.getRuntime().availableProcessors());
+        bulkScanWorkers = Math.max(1, Math.min(workers, cores));
+        bulkScanMinShardWindows = Math.max(1, minShardWindows);
+        if (bulkScanWorkers <= 1) return old;
+
+        final AtomicInteger seq = new AtomicInteger();
+        bulkScanExecutor = Executors.newFixedThreadPool(bulkScanWorkers, r -> {
+            Thread t = new Thread(r, "kws-shard-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        Log.i(TAG, "setParallelBulkScan: " + bulkScanWorkers + " workers, min " +
+                bulkScanMinShardWindows + " windows per shard");
+        return old;
+    }
+
+    // v2 coarse-to-fine search: coarse pass at factor x the hop, then full resolution around
+    // windows scoring >= interest. Measure it with compareCoarseToFine() before enabling.
+    public void setCoarseToFineSearch(boolean enabled, int factor, float interest) {
+        coarseFactor = Math.max(1, factor);
+        coarseInterest = interest;
+        coarseSearchEnabled = enabled;
+    }
+
+    // predictFromExternalFullBuffer(): treat each call as the previous buffer plus new samples
+    // when its prefix matches, and only score the new windows (see scanIncremental()).
+    public void setIncrementalBulkScan(boolean enabled) {
+        incrementalBulkScan = enabled;
+        if (!enabled) endIncrementalScan(null);
+    }
+
     public void setBulkOptimize(boolean enabled, float ratio01) {
         bulkOptimizeEnabled = enabled;
         if (ratio01 < 0f) ratio01 = 0f;
@@ -822,6 +1882,58 @@ private void warmupModels() {
         bulkMinSamples = Math.max(1280 * 2, samples);
     }
 
+    // v2 bulk melspec: one melspec run per block of `windowsPerBlock` sliding windows.
+    // Larger blocks mean fewer melspec calls but a larger melspec input tensor.
+    public void setBulkMelspec(boolean enabled, int windowsPerBlock) {
+        bulkMelEnabled = enabled;
+        bulkMelBlockWindows = Math.max(1, windowsPerBlock);
+    }
+
+    public boolean isBulkMelspecActive() {
+        return bulkMelEnabled && bulkMelVerified;
+    }
+
+    // Use the pure-Java log-mel frontend instead of melspectrogram.onnx (streaming and v2 paths).
+    // It is checked against the ONNX output first; returns false and keeps ONNX if it does not
+    // match within JAVA_MEL_TOL. releaseOnnxMelspec closes the ONNX melspec session (and its arena).
+    public boolean setJavaMelFrontend(boolean enabled, boolean releaseOnnxMelspec) {
+        synchronized (modelLock) { // no frame is using the melspec session / silence cache meanwhile
+            return setJavaMelFrontendLocked(enabled, releaseOnnxMelspec);
+        }
+    }
+
+    private synchronized boolean setJavaMelFrontendLocked(boolean enabled, boolean releaseOnnxMelspec) {
+        if (!enabled) {
+            boolean wasActive = javaMelFrontend != null;
+            javaMelFrontend = null;
+            if (melspecSession == null) reloadMelspecSession();
+            if (wasActive) buildSilenceCache();
+            return true;
+        }
+        if (javaMelFrontend == null) {
+            LogMelFrontend frontend = calibrateJavaMelFrontend();
+            if (frontend == null) return false;
+            javaMelFrontend = frontend;
+            buildSilenceCache(); // silence frames of the new frontend
+        }
+        if (releaseOnnxMelspec && melspecSession != null) {
+            try { melspecSession.close(); } catch (Exception ignored) {}
+            melspecSession = null;
+            Log.i(TAG, "setJavaMelFrontend: ONNX melspec session released");
+        }
+        return true;
+    }
+
+    public boolean isJavaMelFrontendActive() {
+        return javaMelFrontend != null;
+    }
+
+    // v2 batched KWS: number of windows stacked into one KWS run (<= 1 disables batching).
+    // Models with a fixed batch dimension always run with that batch size instead.
+    public void setKwsBatchSize(int windows) {
+        kwsBatchSize = Math.max(1, windows);
+    }
+
     // Wrapper: by default we use v2 (direct mel->ONNX KWS). You can flip to _v1 if needed.
     public boolean predictFromExternalFullBuffer(short[] pcm, int length) {
         return predictFromExternalFullBuffer_v2(pcm, length);
@@ -831,164 +1943,106 @@ private void warmupModels() {
     
 // v2 helper: run ONNX KWS model directly on mel [T,F] -> probability (positive class)
 private float runKwsModelOnMel(int modelIndex, float[][] mel) {
-    if (sessions == null || modelIndex < 0 || modelIndex >= sessions.length) {
+    return runKwsModelOnMel(modelIndex, mel, null);
+}
+
+// Same, on `plan` (a bulk-scan worker's own plan) instead of the shared one when not null.
+private float runKwsModelOnMel(int modelIndex, float[][] mel, KwsModelPlan plan) {
+    if (mel == null || mel.length == 0 || mel[0] == null) {
         return 0.0f;
     }
-    if (mel == null || mel.length == 0 || mel[0] == null) {
+    float[] silentScores = silenceWindowScores;
+    if (silentScores != null && mel == silenceWindow && modelIndex < silentScores.length) {
+        return silentScores[modelIndex];
+    }
+    if (plan == null) plan = planFor(modelIndex);
+    if (plan == null) {
         return 0.0f;
     }
-
-    int T = mel.length;
-    int F = mel[0].length;
-
-    OnnxTensor inputTensor = null;
-    OrtSession.Result result = null;
-    Map<String, OnnxTensor> localInputs = null;
-
     try {
-        String inputName = inputNames[modelIndex].get(0);
-        Map<String, NodeInfo> inputInfoMap = sessions[modelIndex].getInputInfo();
-        TensorInfo tinfo = (TensorInfo) inputInfoMap.get(inputName).getInfo();
-        long[] modelShape = tinfo.getShape();
-        int rank = (modelShape != null ? modelShape.length : 0);
-
-        float[][] melAdj = mel;  // may adjust T to match model
-        long[] shape;
-
-        if (rank == 3) {
-            // (B, T_model, F_model)
-            long tModel = modelShape[1];
-            long fModel = modelShape[2];
-
-            if (fModel > 0 && fModel != F) {
-                Log.e(TAG, "runKwsModelOnMel: mel F mismatch (model F=" + fModel + ", got " + F + ")");
-                return 0.0f;
-            }
-
-            if (tModel > 0 && tModel != T) {
-                int targetT = (int) tModel;
-                float[][] newMel = new float[targetT][F];
-
-                if (T >= targetT) {
-                    // keep last targetT frames
-                    int start = T - targetT;
-                    for (int i = 0; i < targetT; i++) {
-                        newMel[i] = mel[start + i];
-                    }
-                } else {
-                    // pad at front with zeros, place mel at the end
-                    int pad = targetT - T;
-                    for (int i = 0; i < pad; i++) {
-                        newMel[i] = new float[F]; // zeros
-                    }
-                    for (int i = 0; i < T; i++) {
-                        newMel[pad + i] = mel[i];
-                    }
-                }
-                melAdj = newMel;
-                T = targetT;
-            }
-
-            float[] flattened = flatten(melAdj);
-            shape = new long[]{1, T, F};
-            inputTensor = OnnxTensor.createTensor(env, FloatBuffer.wrap(flattened), shape);
-        } else if (rank == 4) {
-            // (B, C, T_model, F_model) with C=1
-            long cModel = modelShape[1];
-            long tModel = modelShape[2];
-            long fModel = modelShape[3];
-
-            if (cModel != 1 && cModel > 0) {
-                Log.e(TAG, "runKwsModelOnMel: unexpected channel dim (shape[1]=" + cModel + ")");
-                return 0.0f;
-            }
-            if (fModel > 0 && fModel != F) {
-                Log.e(TAG, "runKwsModelOnMel: mel F mismatch (model F=" + fModel + ", got " + F + ")");
-                return 0.0f;
-            }
-
-            if (tModel > 0 && tModel != T) {
-                int targetT = (int) tModel;
-                float[][] newMel = new float[targetT][F];
-
-                if (T >= targetT) {
-                    // keep last targetT frames
-                    int start = T - targetT;
-                    for (int i = 0; i < targetT; i++) {
-                        newMel[i] = mel[start + i];
-                    }
-                } else {
-                    // pad at front with zeros, place mel at the end
-                    int pad = targetT - T;
-                    for (int i = 0; i < pad; i++) {
-                        newMel[i] = new float[F];
-                    }
-                    for (int i = 0; i < T; i++) {
-                        newMel[pad + i] = mel[i];
-                    }
-                }
-                melAdj = newMel;
-                T = targetT;
-            }
-
-            float[] flattened = flatten(melAdj);
-            shape = new long[]{1, 1, T, F}; // (B, C=1, T, F)
-            inputTensor = OnnxTensor.createTensor(env, FloatBuffer.wrap(flattened), shape);
-        } else {
-            Log.e(TAG, "runKwsModelOnMel: unsupported input rank " + rank);
-            return 0.0f;
-        }
+        return plan.score(mel);
+    } catch (Exception e) {
+        Log.e(TAG, "runKwsModelOnMel failed: " + e.getMessage());
+        return 0.0f;
+    }
+}
 
-        localInputs = new HashMap<>();
-        localInputs.put(inputName, inputTensor);
-
-        result = sessions[modelIndex].run(localInputs);
-        Object out = result.get(0).getValue();
-
-        // logits -> probability of positive class
-        if (out instanceof float[][]) {
-            float[][] logits2D = (float[][]) out;
-            if (logits2D.length == 0 || logits2D[0] == null || logits2D[0].length == 0) {
-                return 0.0f;
-            }
-            float[] logits = logits2D[0];
-            if (logits.length == 1) return logits[0];
-
-            float l0 = logits[0];
-            float l1 = logits[1];
-            float m = Math.max(l0, l1);
-            float e0 = (float) Math.exp(l0 - m);
-            float e1 = (float) Math.exp(l1 - m);
-            return e1 / (e0 + e1);
-        } else if (out instanceof float[]) {
-            float[] logits = (float[]) out;
-            if (logits.length == 0) return 0.0f;
-            if (logits.length == 1) return logits[0];
-
-            float l0 = logits[0];
-            float l1 = logits[1];
-            float m = Math.max(l0, l1);
-            float e0 = (float) Math.exp(l0 - m);
-            float e1 = (float) Math.exp(l1 - m);
-            return e1 / (e0 + e1);
-        } else {
-            Log.w(TAG, "runKwsModelOnMel: unexpected output type " + out.getClass());
-            return 0.0f;
-        }
+// Same as runKwsModelOnMel on a row-major [T,F] window; the plan applies the model's T policy.
+private float runKwsModelOnMelFlat(int modelIndex, float[] melFlat, int T, int F) {
+    KwsModelPlan plan = planFor(modelIndex);
+    if (plan == null || melFlat == null || T <= 0 || F <= 0) {
+        return 0.0f;
+    }
+    try {
+        return plan.score(melFlat, T, F);
     } catch (Exception e) {
         Log.e(TAG, "runKwsModelOnMel failed: " + e.getMessage());
         return 0.0f;
-    } finally {
-        if (localInputs != null) {
-            localInputs.clear();
+    }
+}
+
+// Run task(0 .. n) for every model: serially, or on kwsExecutor with model 0 on the caller thread.
+// Returns once every model is done; a failure in any model is rethrown on the caller. Models the
+// pool rejects (shut down) are scored on the caller thread.
+private void forEachModel(int n, IntConsumer task) throws Exception {
+    ExecutorService ex = kwsExecutor;
+    if (ex == null || n < 2) {
+        for (int i = 0; i < n; i++) task.accept(i);
+        return;
+    }
+    Future<?>[] pending = new Future<?>[n];
+    for (int i = 1; i < n; i++) {
+        final int model = i;
+        try {
+            pending[i] = ex.submit(() -> task.accept(model));
+        } catch (RejectedExecutionException e) {
+            break;
         }
-        if (result != null) result.close();
-        if (inputTensor != null) inputTensor.close();
+    }
+    task.accept(0);
+    for (int i = 1; i < n; i++) {
+        if (pending[i] == null) {
+            task.accept(i);
+            continue;
+        }
+        try {
+            pending[i].get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw (cause instanceof Exception) ? (Exception) cause : new RuntimeException(cause);
+        }
+    }
+}
+
+private KwsModelPlan planFor(int modelIndex) {
+    KwsModelPlan[] plans = kwsPlans;
+    if (plans == null || modelIndex < 0 || modelIndex >= plans.length) {
+        return null;
+    }
+    return plans[modelIndex];
+}
+
+// (Re)build the per-model plans for the current sessions; called wherever sessions[] is created.
+private void buildKwsPlans() throws OrtException {
+    closeKwsPlans();
+    KwsModelPlan[] plans = new KwsModelPlan[sessions.length];
+    for (int i = 0; i < sessions.length; i++) {
+        plans[i] = KwsModelPlan.create(env, sessions[i], inputNames[i].get(0));
+    }
+    kwsPlans = plans;
+}
+
+private void closeKwsPlans() {
+    KwsModelPlan[] plans = kwsPlans;
+    kwsPlans = null;
+    if (plans == null) return;
+    for (KwsModelPlan plan : plans) {
+        if (plan != null) plan.close();
     }
 }
 
     // small helper: logits -> prob(class 1)
-    private float softmaxPositive(float[] logits) {
+    static float softmaxPositive(float[] logits) {
         if (logits == null || logits.length == 0) return 0.0f;
         if (logits.length == 1) return logits[0]; // model already outputs prob/logit for positive class
 
@@ -1000,21 +2054,263 @@ private float runKwsModelOnMel(int modelIndex, float[][] mel) {
         return e1 / (e0 + e1);
     }
 
+// v2 batched helper: stack mels[from .. from+count) into one [N,T,F] / [N,1,T,F] tensor per run and
+// write prob(positive) for each window into out[0 .. count). Runs in chunks of kwsBatchSize, or of
+// the model's fixed batch dimension (zero-padded). Empty windows score 0; windows left when the
+// scan budget runs out are NaN. If the model rejects a batched run it is marked and scored per
+// window from then on.
+private void runKwsModelOnMelBatch(int modelIndex, float[][][] mels, int from, int count, float[] out) {
+    runKwsModelOnMelBatch(modelIndex, mels, from, count, out, null, null);
+}
+
+// workerPlan / buffers: a bulk-scan worker's own plan for this model and its per-model input
+// buffers (buffers[modelIndex], grown as needed), so concurrent workers share nothing but the
+// session (OrtSession.run is thread-safe). null: the shared plan and a buffer per call.
+private void runKwsModelOnMelBatch(int modelIndex, float[][][] mels, int from, int count, float[] out,
+                                   KwsModelPlan workerPlan, float[][] buffers) {
+    if (count <= 0) return;
+    Arrays.fill(out, 0, count, 0.0f);
+    if (sessions == null || modelIndex < 0 || modelIndex >= sessions.length) return;
+
+    // all-silence windows take the cached score; only the rest go through the model
+    float[][] silentWindow = silenceWindow;
+    float[] silentScores = silenceWindowScores;
+    if (silentWindow != null && silentScores != null && modelIndex < silentScores.length) {
+        int silent = 0;
+        for (int w = 0; w < count; w++) {
+            if (mels[from + w] == silentWindow) silent++;
+        }
+        if (silent > 0) {
+            float[][][] rest = new float[count - silent][][];
+            int[] restIndex = new int[count - silent];
+            int r = 0;
+            for (int w = 0; w < count; w++) {
+                if (mels[from + w] == silentWindow) {
+                    out[w] = silentScores[modelIndex];
+                } else {
+                    restIndex[r] = w;
+                    rest[r++] = mels[from + w];
+                }
+            }
+            if (r > 0) {
+                float[] restOut = new float[r];
+                runKwsModelOnMelBatch(modelIndex, rest, 0, r, restOut, workerPlan, buffers);
+                for (int k = 0; k < r; k++) out[restIndex[k]] = restOut[k];
+            }
+            return;
+        }
+    }
+
+    int F = -1, melT = -1;
+    for (int w = 0; w < count && F < 0; w++) {
+        float[][] mel = mels[from + w];
+        if (mel != null && mel.length > 0 && mel[0] != null) {
+            F = mel[0].length;
+            melT = mel.length;
+        }
+    }
+    if (F < 0) return;
+
+    KwsModelPlan plan = (workerPlan != null) ? workerPlan : planFor(modelIndex);
+    if (plan == null) return;
+    String inputName = plan.inputName;
+    int rank = plan.rank;
+    boolean unsupported = kwsBatchUnsupported != null && kwsBatchUnsupported[modelIndex];
+
+    int batch = Math.max(1, kwsBatchSize);
+    int bModel = plan.bModel;
+    if (bModel > 0) batch = bModel;  // fixed batch dim: always run exactly bModel windows
+
+    if (rank == 0 || unsupported || batch == 1) {
+        scoreWindowsOneByOne(modelIndex, mels, from, 0, count, out, workerPlan);
+        return;
+    }
+
+    int tModel = plan.tModel;
+    int fModel = plan.fModel;
+    if (fModel > 0 && fModel != F) {
+        Log.e(TAG, "runKwsModelOnMelBatch: mel F mismatch (model F=" + fModel + ", got " + F + ")");
+        return;
+    }
+    int T = (tModel > 0) ? tModel : melT;
+    int windowSize = T * F;
+    float[] flat = (buffers != null) ? buffers[modelIndex] : null;
+    if (flat == null || flat.length < batch * windowSize) {
+        flat = new float[batch * windowSize];
+        if (buffers != null) buffers[modelIndex] = flat;
+    }
+
+    for (int done = 0; done < count; done += batch) {
+        if (budgetSpent()) {
+            Arrays.fill(out, done, count, Float.NaN);
+            return;
+        }
+        int n = Math.min(batch, count - done);
+        int nRun = (bModel > 0) ? batch : n;
+        for (int w = 0; w < nRun; w++) {
+            float[][] mel = (w < n) ? mels[from + done + w] : null;
+            copyMelWindow(mel, T, F, flat, w * windowSize);
+        }
+
+        long[] shape = (rank == 3) ? new long[]{nRun, T, F} : new long[]{nRun, 1, T, F};
+        OnnxTensor inputTensor = null;
+        OrtSession.Result result = null;
+        try {
+            inputTensor = OnnxTensor.createTensor(env, FloatBuffer.wrap(flat, 0, nRun * windowSize), shape);
+            result = plan.session.run(Collections.singletonMap(inputName, inputTensor));
+            if (!readBatchScores(result.get(0).getValue(), n, out, done)) {
+                throw new IllegalStateException("unexpected batched output layout");
+            }
+        } catch (Exception e) {
+            if (isBatchShapeRejection(e)) {
+                Log.w(TAG, "runKwsModelOnMelBatch: batched run rejected by model " + modelIndex +
+                        ", per-window from now on: " + e.getMessage());
+                if (kwsBatchUnsupported != null) kwsBatchUnsupported[modelIndex] = true;
+            } else {
+                Log.w(TAG, "runKwsModelOnMelBatch: batched run failed for model " + modelIndex +
+                        ", per-window for this call: " + e);
+            }
+            scoreWindowsOneByOne(modelIndex, mels, from, done, count, out, workerPlan);
+            return;
+        } finally {
+            if (result != null) result.close();
+            if (inputTensor != null) inputTensor.close();
+        }
+        for (int w = 0; w < n; w++) {
+            float[][] mel = mels[from + done + w];
+            if (mel == null || mel.length == 0 || mel[0] == null) out[done + w] = 0.0f;
+        }
+    }
+}
+
+// True when ORT refused the [N,T,F] input itself (a batch dim the graph does not accept, or a
+// node with the batch baked in), i.e. every later batched run of this model would fail the same
+// way. Anything else (a transient run failure, an output layout we could not read) is not sticky.
+private static boolean isBatchShapeRejection(Exception e) {
+    if (!(e instanceof OrtException)) return false;
+    if (((OrtException) e).getCode() == OrtException.OrtErrorCode.ORT_INVALID_ARGUMENT) return true;
+    String msg = e.getMessage();
+    if (msg == null) return false;
+    msg = msg.toLowerCase(Locale.ROOT);
+    return msg.contains("dimension") || msg.contains("shape");
+}
+
+private void scoreWindowsOneByOne(int modelIndex, float[][][] mels, int from, int start, int count, float[] out,
+                                  KwsModelPlan plan) {
+    for (int w = start; w < count; w++) {
+        if (budgetSpent()) {
+            Arrays.fill(out, w, count, Float.NaN);
+            return;
+        }
+        out[w] = runKwsModelOnMel(modelIndex, mels[from + w], plan);
+    }
+}
+
+// Write one mel window into dst[off .. off+T*F), applying the same T policy as runKwsModelOnMel:
+// keep the last T frames, or zero-pad at the front. A null/empty window becomes all zeros.
+private static void copyMelWindow(float[][] mel, int T, int F, float[] dst, int off) {
+    int melT = (mel == null || mel.length == 0 || mel[0] == null) ? 0 : mel.length;
+    int pad = Math.max(0, T - melT);
+    if (pad > 0) Arrays.fill(dst, off, off + pad * F, 0.0f);
+    int start = melT - (T - pad);
+    for (int t = pad; t < T; t++) {
+        System.arraycopy(mel[start + t - pad], 0, dst, off + t * F, F);
+    }
+}
+
+// logits [N,2] / [N,1] / [N] / [N*2] -> prob(positive) per window
+private boolean readBatchScores(Object out, int n, float[] dst, int dstOff) {
+    if (out instanceof float[][]) {
+        float[][] rows = (float[][]) out;
+        if (rows.length < n) return false;
+        for (int w = 0; w < n; w++) dst[dstOff + w] = softmaxPositive(rows[w]);
+        return true;
+    } else if (out instanceof float[]) {
+        float[] v = (float[]) out;
+        if (v.length == n) {
+            System.arraycopy(v, 0, dst, dstOff, n);
+            return true;
+        } else if (v.length >= 2 * n) {
+            float[] pair = new float[2];
+            for (int w = 0; w < n; w++) {
+                pair[0] = v[2 * w];
+                pair[1] = v[2 * w + 1];
+                dst[dstOff + w] = softmaxPositive(pair);
+            }
+            return true;
+        }
+    }
+    return false;
+}
+
+// Score every window queued in bulkWindows with one batched KWS run per model: [model][window]
+private float[][] scoreBulkWindows() {
+    int n = bulkWindows.size();
+    int numModels = (sessions == null) ? 0 : sessions.length;
+    float[][] scores = new float[numModels][n];
+    if (n == 0) return scores;
+    float[][][] windows = bulkWindows.toArray(new float[n][][]);
+    for (int i = 0; i < numModels; i++) {
+        runKwsModelOnMelBatch(i, windows, 0, n, scores[i]);
+    }
+    return scores;
+}
+
+// v2: per-chunk melspec for `numSteps` consecutive windows (used when bulk melspec is unavailable)
+private float[][][] getChunkMelWindows(short[] wav, int firstStep, int numSteps) {
+    final float[][] silentWindow = silenceWindow;
+    float[][][] windows = new float[numSteps][][];
+    for (int w = 0; w < numSteps; w++) {
+        int start = (firstStep + w) * Constants.FRAME_LENGTH;
+        if (silentWindow != null && isAllZero(wav, start, V2_KWD_CLIP_SAMPLES)) {
+            windows[w] = silentWindow;
+            continue;
+        }
+        windows[w] = getMelspectrogramForV2(wav, start, V2_KWD_CLIP_SAMPLES);
+    }
+    return windows;
+}
+
+private static boolean isAllZero(short[] pcm, int off, int len) {
+    for (int i = off, end = off + len; i < end; i++) {
+        if (pcm[i] != 0) return false;
+    }
+    return true;
+}
+
 // v2-specific: melspec from ONNX WITHOUT the /10 + 2 transform
 private float[][] getMelspectrogramForV2(short[] audioData) {
-    float[] audioDataFloat = new float[audioData.length];
-    for (int i = 0; i < audioData.length; i++) {
+    return getMelspectrogramForV2(audioData, 0, audioData.length);
+}
+
+private float[][] getMelspectrogramForV2(short[] audioData, int offset, int length) {
+    float[] audioDataFloat = new float[length];
+    for (int i = 0; i < length; i++) {
         // same normalization as Python waveform
-        audioDataFloat[i] = audioData[i] * INV_SHORT_MAX;
+        audioDataFloat[i] = audioData[offset + i] * INV_SHORT_MAX;
+    }
+
+    LogMelFrontend frontend = javaMelFrontend;
+    if (frontend != null) {
+        return frontend.compute(audioDataFloat, 0, length);
+    }
+    try {
+        return runMelspecOnnx(audioDataFloat, length);  // [T,F]
+    } catch (Exception e) {
+        Log.e(TAG, "getMelspectrogramForV2: failed to run melspec session: " + e.getMessage());
+        return new float[0][0];
     }
+}
 
+// melspectrogram.onnx over audioDataFloat[0 .. length) -> raw [T,F] (no transform)
+private float[][] runMelspecOnnx(float[] audioDataFloat, int length) throws OrtException {
     long[] inputShape;
     if (melspecInputRank == 1) {
         // Python: waveform.numpy() 1D
-        inputShape = new long[]{audioDataFloat.length};
+        inputShape = new long[]{length};
     } else {
         // Python: waveform.numpy() 2D [1, N]
-        inputShape = new long[]{1, audioDataFloat.length};
+        inputShape = new long[]{1, length};
     }
     OnnxTensor inputTensor = null;
     OrtSession.Result result = null;
@@ -1022,7 +2318,7 @@ private float[][] getMelspectrogramForV2(short[] audioData) {
     Map<String, OnnxTensor> localInputs = null;
 
     try {
-        inputTensor = OnnxTensor.createTensor(env, FloatBuffer.wrap(audioDataFloat), inputShape);
+        inputTensor = OnnxTensor.createTensor(env, FloatBuffer.wrap(audioDataFloat, 0, length), inputShape);
         localInputs = new HashMap<>();
         melSpecInputName = melspecInputNames.iterator().next();
         localInputs.put(melSpecInputName, inputTensor);
@@ -1032,9 +2328,6 @@ private float[][] getMelspectrogramForV2(short[] audioData) {
 
         // Same helper you already have
         return coerceMelTo2D(output);  // [T,F]
-    } catch (Exception e) {
-        Log.e(TAG, "getMelspectrogramForV2: failed to run melspec session: " + e.getMessage());
-        return new float[0][0];
     } finally {
         if (localInputs != null && melSpecInputName != null) {
             localInputs.remove(melSpecInputName);
@@ -1044,6 +2337,256 @@ private float[][] getMelspectrogramForV2(short[] audioData) {
     }
 }
 
+// v2 bulk melspec: run melspec once over `numSteps` consecutive sliding windows of `wav`
+// and slice the per-window [T,F] views (rows are shared, not copied).
+// Returns null if the block output does not have the framing derived in verifyBulkMelParity().
+private float[][][] getBulkMelWindows(short[] wav, int firstStep, int numSteps) {
+    final int stride = Constants.FRAME_LENGTH;
+    int start = firstStep * stride;
+    int len   = (numSteps - 1) * stride + V2_KWD_CLIP_SAMPLES;
+
+    int expectedFrames = 1 + (len - melFrameSamples) / melHopSamples;
+    float[][] blockMel = getBlockMelFrames(wav, start, len, expectedFrames);
+    if (blockMel == null || blockMel.length != expectedFrames) {
+        Log.w(TAG, "getBulkMelWindows: unexpected frame count " +
+                (blockMel == null ? -1 : blockMel.length) + " (expected " + expectedFrames + ")");
+        return null;
+    }
+
+    final float[] silentRow = silenceMelRow;
+    final float[][] silentWindow = silenceWindow;
+    int framesPerStep = stride / melHopSamples;
+    float[][][] windows = new float[numSteps][][];
+    for (int w = 0; w < numSteps; w++) {
+        int from = w * framesPerStep;
+        boolean silent = silentRow != null && silentWindow != null;
+        for (int t = from; silent && t < from + melClipFrames; t++) {
+            silent = blockMel[t] == silentRow;
+        }
+        windows[w] = silent ? silentWindow : Arrays.copyOfRange(blockMel, from, from + melClipFrames);
+    }
+    return windows;
+}
+
+// Mel frames of wav[start, start+len). With the silence cache, melspec only runs over the frames
+// that see non-zero samples; all other frames are the shared silenceMelRow.
+private float[][] getBlockMelFrames(short[] wav, int start, int len, int expectedFrames) {
+    final float[] silentRow = silenceMelRow;
+    if (silentRow == null) {
+        return getMelspectrogramForV2(wav, start, len);
+    }
+    int first = start;
+    int end = start + len;
+    while (first < end && wav[first] == 0) first++;
+    int last = end - 1;
+    while (last >= first && wav[last] == 0) last--;
+
+    float[][] frames = new float[expectedFrames][];
+    // frame f covers [start + f*hop, start + f*hop + span); it is silent unless it overlaps [first, last]
+    int fA = 0;
+    int fB = -1;
+    if (first <= last) {
+        fA = Math.max(0, Math.floorDiv(first - start - melFrameSamples, melHopSamples) + 1);
+        fB = Math.min(expectedFrames - 1, (last - start) / melHopSamples);
+    }
+    if (fA <= fB) {
+        float[][] real = getMelspectrogramForV2(wav, start + fA * melHopSamples,
+                (fB - fA) * melHopSamples + melFrameSamples);
+        if (real == null || real.length != fB - fA + 1) return real;
+        System.arraycopy(real, 0, frames, fA, real.length);
+    }
+    for (int f = 0; f < expectedFrames; f++) {
+        if (frames[f] == null) frames[f] = silentRow;
+    }
+    return frames;
+}
+
+// Mel frame of digital silence, enabled only if it is constant across a clip and splicing it in
+// reproduces per-chunk melspec around a silence/audio boundary. Then scores the silent window.
+private void buildSilenceCache() {
+    silenceMelRow = null;
+    silenceWindow = null;
+    silenceWindowScores = null;
+    if (!bulkMelVerified) return;
+
+    float[][] zeros = getMelspectrogramForV2(new short[V2_KWD_CLIP_SAMPLES], 0, V2_KWD_CLIP_SAMPLES);
+    if (zeros == null || zeros.length != melClipFrames || zeros[0] == null) return;
+    float[] row = zeros[0].clone();
+    for (float[] r : zeros) {
+        for (int f = 0; f < row.length; f++) {
+            if (Math.abs(r[f] - row[f]) > BULK_MEL_PARITY_TOL) {
+                Log.i(TAG, "buildSilenceCache: silence frames are not constant, cache disabled");
+                return;
+            }
+        }
+    }
+
+    // zeros | noise | zeros, with windows straddling both boundaries
+    final int stride = Constants.FRAME_LENGTH;
+    short[] probe = new short[2 * V2_KWD_CLIP_SAMPLES + 4 * stride];
+    ProbeSignal.addNoise(probe, V2_KWD_CLIP_SAMPLES, V2_KWD_CLIP_SAMPLES + 4 * stride, 0x1b873593, 8000);
+    int steps = (probe.length - V2_KWD_CLIP_SAMPLES) / stride + 1;
+    silenceMelRow = row;
+    float[][][] spliced = getBulkMelWindows(probe, 0, steps);
+    float maxDiff = (spliced == null) ? Float.MAX_VALUE : 0f;
+    for (int step = 0; spliced != null && step < steps; step++) {
+        float[][] chunk = getMelspectrogramForV2(probe, step * stride, V2_KWD_CLIP_SAMPLES);
+        if (chunk.length != spliced[step].length) {
+            maxDiff = Float.MAX_VALUE;
+            break;
+        }
+        for (int t = 0; t < chunk.length; t++) {
+            for (int f = 0; f < chunk[t].length; f++) {
+                maxDiff = Math.max(maxDiff, Math.abs(chunk[t][f] - spliced[step][t][f]));
+            }
+        }
+    }
+    if (maxDiff > BULK_MEL_PARITY_TOL) {
+        silenceMelRow = null;
+        Log.i(TAG, "buildSilenceCache: splice parity failed (maxDiff=" + maxDiff + "), cache disabled");
+        return;
+    }
+
+    float[][] window = new float[melClipFrames][];
+    Arrays.fill(window, row);
+    silenceWindow = window;
+    buildSilenceScores();
+    Log.i(TAG, "buildSilenceCache: silence mel frame cached (splice maxDiff=" + maxDiff + ")");
+}
+
+// Per-model score of the all-silence window; rebuilt whenever the models change.
+private void buildSilenceScores() {
+    synchronized (modelLock) { // not across a model swap
+        silenceWindowScores = null;
+        float[][] window = silenceWindow;
+        if (window == null || sessions == null) return;
+        float[] scores = new float[sessions.length];
+        for (int i = 0; i < sessions.length; i++) {
+            scores[i] = runKwsModelOnMel(i, window);
+        }
+        silenceWindowScores = scores;
+    }
+}
+
+// The Java melspec recipe (LogMelFrontend.forKwsModels), checked against melspectrogram.onnx on a
+// probe clip. Returns null if it is not within JAVA_MEL_TOL (or the ONNX melspec is not available).
+private LogMelFrontend calibrateJavaMelFrontend() {
+    if (melspecSession == null) {
+        Log.w(TAG, "calibrateJavaMelFrontend: no ONNX melspec session to validate against");
+        return null;
+    }
+    // deterministic noise + tone, one training clip long
+    short[] pcm = ProbeSignal.noiseOverTone(V2_KWD_CLIP_SAMPLES, 0x2545F491, 8000, 6000, 0.0628);
+    float[] probe = new float[pcm.length];
+    for (int i = 0; i < pcm.length; i++) probe[i] = pcm[i] * INV_SHORT_MAX;
+    float[][] ref;
+    try {
+        ref = runMelspecOnnx(probe, probe.length);
+    } catch (Exception e) {
+        Log.w(TAG, "calibrateJavaMelFrontend: ONNX melspec failed: " + e.getMessage());
+        return null;
+    }
+    if (ref.length < 2 || ref[0] == null) return null;
+
+    LogMelFrontend frontend = LogMelFrontend.forKwsModels();
+    float[][] out = frontend.compute(probe, 0, probe.length);
+    if (out.length != ref.length || out[0].length != ref[0].length) {
+        Log.w(TAG, "calibrateJavaMelFrontend: [" + frontend.describe() + "] gives " + out.length + "x" +
+                out[0].length + " frames, ONNX " + ref.length + "x" + ref[0].length + " -> rejected");
+        return null;
+    }
+    float diff = 0f;
+    for (int t = 0; t < out.length; t++) {
+        for (int f = 0; f < out[t].length; f++) {
+            diff = Math.max(diff, Math.abs(out[t][f] - ref[t][f]));
+        }
+    }
+    Log.i(TAG, "calibrateJavaMelFrontend: [" + frontend.describe() + "] maxDiff=" + diff +
+            (diff <= JAVA_MEL_TOL ? " -> accepted" : " -> rejected"));
+    return (diff <= JAVA_MEL_TOL) ? frontend : null;
+}
+
+private void reloadMelspecSession() {
+    if (melspecModelPath == null || env == null) return;
+    try {
+        melspecSession = ModelLoader.createCachedSession(env, context, melspecModelPath,
+                this::buildSessionOptions, null);
+        melspecInputNames = melspecSession.getInputNames();
+    } catch (OrtException e) {
+        Log.e(TAG, "reloadMelspecSession failed: " + e.getMessage());
+    }
+}
+
+// Derive the melspec framing (frames per clip, samples per frame) from the model and check that
+// slicing one bulk melspec run gives the same frames as per-chunk melspec. Bulk mode stays off
+// if the model pads/normalizes across the whole input (e.g. centered STFT).
+private void verifyBulkMelParity() {
+    bulkMelVerified = false;
+    final int stride = Constants.FRAME_LENGTH;
+    final int probeSteps = 3;
+
+    // deterministic non-silent probe (LCG noise), so edge effects would show up
+    short[] probe = ProbeSignal.noise((probeSteps - 1) * stride + V2_KWD_CLIP_SAMPLES, 0x2545F491, 8000);
+
+    float[][] first = getMelspectrogramForV2(probe, 0, V2_KWD_CLIP_SAMPLES);
+    if (first == null || first.length == 0 || first[0] == null) {
+        Log.w(TAG, "verifyBulkMelParity: melspec returned empty output, bulk melspec disabled");
+        return;
+    }
+    melClipFrames   = first.length;
+    melFrameSamples = V2_KWD_CLIP_SAMPLES - (melClipFrames - 1) * melHopSamples;
+    if (stride % melHopSamples != 0 || melFrameSamples <= 0 || melFrameSamples > V2_KWD_CLIP_SAMPLES) {
+        Log.w(TAG, "verifyBulkMelParity: unsupported framing (frames=" + melClipFrames +
+                ", frameSamples=" + melFrameSamples + "), bulk melspec disabled");
+        return;
+    }
+
+    float[][][] bulk = getBulkMelWindows(probe, 0, probeSteps);
+    if (bulk == null) return;
+
+    float maxDiff = 0f;
+    for (int step = 0; step < probeSteps; step++) {
+        float[][] chunk = (step == 0) ? first
+                : getMelspectrogramForV2(probe, step * stride, V2_KWD_CLIP_SAMPLES);
+        if (chunk.length != bulk[step].length) return;
+        for (int t = 0; t < chunk.length; t++) {
+            if (chunk[t].length != bulk[step][t].length) return;
+            for (int f = 0; f < chunk[t].length; f++) {
+                maxDiff = Math.max(maxDiff, Math.abs(chunk[t][f] - bulk[step][t][f]));
+            }
+        }
+    }
+    bulkMelVerified = maxDiff <= BULK_MEL_PARITY_TOL;
+    Log.i(TAG, "verifyBulkMelParity: frames/clip=" + melClipFrames + " frameSamples=" + melFrameSamples +
+            " maxDiff=" + maxDiff + " -> bulk melspec " + (bulkMelVerified ? "enabled" : "disabled"));
+}
+
+// Shared hit logic for one model score: consecutive-hit counting, callback throttling,
+// WAV capture and callback delivery. Returns true if a detection was reported.
+private boolean handleKwsScore(int i, float meanPrediction, String wavSuffix) throws IOException {
+    if (meanPrediction > fakeThresholds[i]) {
+        if (meanPrediction < keyThreasholds[i]) {
+            concurrentPredictions[i] = 0;
+        } else {
+            concurrentPredictions[i]++;
+            if (concurrentPredictions[i] >= keyBufferCnts[i]) {
+                boolean detected = false;
+                long now = System.currentTimeMillis();
+                if (lastCallbackInMS[i] + msBetweenCallbacks[i] <= now) {
+                    lastCallbackInMS[i] = now;
+                    dispatchDetection(strippedModelNames[i] + wavSuffix, strippedModelNames[i]);
+                    detected = true;
+                }
+                concurrentPredictions[i] = 0;
+                return detected;
+            }
+        }
+    } else {
+        concurrentPredictions[i] = 0;
+    }
+    return false;
+}
+
     private boolean processOneKwFrameV2(short[] frame, int frameLength) {
         try {
             // 1) update raw buffer (same as other paths)
@@ -1056,13 +2599,13 @@ private float[][] getMelspectrogramForV2(short[] audioData) {
             streamingMelspectrogram(frameLength);
 
             int ndx = getMelNumberOfRows();
-            if (ndx < 76) {
+            if (ndx < MEL_WINDOW_FRAMES) {
                 return false; // need at least 76 mel frames
             }
 
-            // 3) take last 76×32 window
-            float[][][][] melspectrogramSlice = getMelspecSubArray(ndx - 76, ndx);
-            float[][] melWindow = flattenSubArray(melspectrogramSlice); // [76, 32]
+            // 3) last 76×32 window, written straight into the reusable model input
+            int bins = melspectrogramBuffer.bins();
+            melspectrogramBuffer.copyLast(MEL_WINDOW_FRAMES, melWindowFlat, 0);
 
             if (sessions == null || sessions.length == 0) {
                 return false;
@@ -1070,45 +2613,147 @@ private float[][] getMelspectrogramForV2(short[] audioData) {
 
             boolean detected = false;
 
-            // 4) run each ONNX KWS model directly on this mel window
-            for (int i = 0; i < sessions.length; i++) {
-                float meanPrediction = runKwsModelOnMel(i, melWindow);
+            // 4) run each ONNX KWS model directly on this mel window (possibly in parallel),
+            //    then apply the hit logic in model order
+            final int n = sessions.length;
+            if (frameScores.length != n) frameScores = new float[n];
+            final float[] scores = frameScores;
+            forEachModel(n, i -> scores[i] = runKwsModelOnMelFlat(i, melWindowFlat, MEL_WINDOW_FRAMES, bins));
+            for (int i = 0; i < n; i++) {
+                if (handleKwsScore(i, scores[i], "_prediction.wav")) {
+                    detected = true;
+                }
+            }
+            return detected;
+        } catch (Throwable fatal) {
+            Log.e(TAG, "processOneKwFrameV2 failed – stopping detector", fatal);
+            stopListening();
+            return false;
+        }
+    }
+
+// === v2: streaming over full buffer + head/tail pad -> melspec ONNX -> KWS ONNX ===
+// === v2: match Python eval_wav_fixed_windows (PCM sliding) ===
+public boolean predictFromExternalFullBuffer_v2(short[] pcm, int length) {
+    if (incrementalBulkScan) {
+        return scanIncremental(null, pcm, length).detected;
+    }
+    return scanExternalFullBuffer(pcm, length).detected;
+}
+
+// Budgeted v2 bulk scan: stops at the next window once timeoutMs has elapsed (<= 0: no limit) or
+// cancel is set (may be null). Windows scored before the stop keep their normal hit logic, so a
+// detection found in time is still reported. Bulk scans are not reentrant (they share the
+// per-model hit counters), so the budget applies to the scan running on this detector.
+public BulkScanResult predictFromExternalFullBuffer_v2(short[] pcm, int length, long timeoutMs,
+                                                        AtomicBoolean cancel) {
+    ScanBudget budget = new ScanBudget(timeoutMs, cancel);
+    BulkScanResult res;
+    scanBudget = budget;
+    try {
+        res = incrementalBulkScan ? scanIncremental(null, pcm, length)
+                                  : scanExternalFullBuffer(pcm, length);
+    } finally {
+        scanBudget = null;
+    }
+    res.timedOut = budget.timedOut();
+    res.cancelled = budget.cancelled();
+    res.finished = !budget.stopped();
+    res.windowsDone = res.scoredWindows + res.skippedWindows + res.prunedWindows;
+    return res;
+}
+
+// True while the bulk scan may go on to its next window.
+private boolean scanActive() {
+    if (!isListening) return false;
+    ScanBudget budget = scanBudget;
+    return budget == null || !budget.exhausted();
+}
+
+// True if some model has no score (NaN) for window w; empty mel windows score 0, never NaN here.
+private static boolean unscored(float[][] scores, int w) {
+    for (float[] model : scores) {
+        if (Float.isNaN(model[w])) return true;
+    }
+    return false;
+}
+
+// Polls the budget of the running bulk scan; false outside budgeted scans. For the loops inside
+// a block (batches, single windows), which leave NaN for windows they did not score.
+private boolean budgetSpent() {
+    ScanBudget budget = scanBudget;
+    return budget != null && budget.exhausted();
+}
+
+private boolean scanBudgetStopped() {
+    ScanBudget budget = scanBudget;
+    return budget != null && budget.stopped();
+}
+
+// handleKwsScore for the bulk scans, also tracking the best score seen. step: the window scored,
+// so a detection's capture clip is cut around it.
+private boolean handleBulkScore(int i, float score, int step, BulkScanResult res) throws IOException {
+    if (score > res.bestScore) {
+        res.bestScore = score;
+        res.bestModel = strippedModelNames[i];
+    }
+    bulkHitEnd = Math.min(bulkCaptureLength,
+            step * Constants.FRAME_LENGTH + V2_KWD_CLIP_SAMPLES - bulkCaptureFrontPad);
+    return handleKwsScore(i, score, "_prediction_v2.wav");
+}
+
+// Route capture clips of the bulk scan over pcm[0 .. length) to that buffer (see dispatchDetection).
+private void beginBulkCapture(short[] pcm, int length) {
+    bulkCapturePcm = pcm;
+    bulkCaptureLength = length;
+    bulkCaptureFrontPad = Math.max(0, V2_KWD_CLIP_SAMPLES - length);
+}
+
+// Outcome of one v2 bulk scan. skippedWindows counts sliding windows not scored because the
+// VAD pre-scan found no speech under them (0 when the pre-scan is off).
+public static class BulkScanResult {
+    public boolean detected;
+    public int totalWindows;
+    public int scoredWindows;
+    public int skippedWindows;
+    public int[][] speechSegments; // [start, end) in input samples, margins included; null = no pre-scan
+    public int coarseWindows;      // windows scored by the coarse pass (coarse-to-fine search only)
+    public int prunedWindows;      // windows the coarse pass ruled out, not scored (coarse-to-fine search only)
+    public int reusedWindows;      // window scores taken from an earlier push (incremental scan only)
+    public float bestScore = 0.0f; // highest model score the hit logic saw
+    public String bestModel;       // model that produced bestScore, null if none
+    public boolean finished = true; // false: the budget ran out before all windows were processed
+    public boolean timedOut;
+    public boolean cancelled;
+    public int windowsDone;        // windows 0 .. windowsDone-1 went through the hit logic (budgeted scan only)
+    public long elapsedMs;
+
+    @Override
+    public String toString() {
+        return "BulkScanResult{detected=" + detected + ", windows=" + totalWindows +
+                ", scored=" + scoredWindows + ", skipped=" + skippedWindows + ", coarse=" + coarseWindows + ", pruned=" + prunedWindows + ", reused=" + reusedWindows +
+                ", segments=" + (speechSegments == null ? "n/a" : String.valueOf(speechSegments.length)) +
+                ", best=" + bestScore + (bestModel == null ? "" : " (" + bestModel + ")") +
+                (finished ? "" : ", stopped at " + windowsDone + (timedOut ? " (timeout)" : " (cancelled)")) +
+                ", " + elapsedMs + " ms}";
+    }
+}
 
-                if (meanPrediction > fakeThresholds[i]) {
-                    if (meanPrediction < keyThreasholds[i]) {
-                        concurrentPredictions[i] = 0;
-                    } else {
-                        concurrentPredictions[i]++;
-                        if (concurrentPredictions[i] >= keyBufferCnts[i]) {
-                            long now = System.currentTimeMillis();
-                            if (lastCallbackInMS[i] + msBetweenCallbacks[i] <= now) {
-                                lastCallbackInMS[i] = now;
-                                String fileName = strippedModelNames[i] + "_prediction.wav";
-                                flushBufferToWav(fileName);
-                                if (keywordDetectedCallback != null) {
-                                    keywordDetectedCallback.accept(true, strippedModelNames[i]);
-                                }
-                                detected = true;
-                            }
-                            concurrentPredictions[i] = 0;
-                        }
-                    }
-                } else {
-                    concurrentPredictions[i] = 0;
-                }
-            }
-            return detected;
-        } catch (Throwable fatal) {
-            Log.e(TAG, "processOneKwFrameV2 failed – stopping detector", fatal);
-            stopListening();
-            return false;
+// Same scan as predictFromExternalFullBuffer_v2, returning the full BulkScanResult.
+public BulkScanResult scanExternalFullBuffer(short[] pcm, int length) {
+    synchronized (modelLock) { // one model set for the whole scan
+        beginBulkCapture(pcm, length);
+        try {
+            return scanExternalFullBufferLocked(pcm, length);
+        } finally {
+            bulkCapturePcm = null;
         }
     }
+}
 
-// === v2: streaming over full buffer + head/tail pad -> melspec ONNX -> KWS ONNX ===
-// === v2: match Python eval_wav_fixed_windows (PCM sliding) ===
-public boolean predictFromExternalFullBuffer_v2(short[] pcm, int length) {
-    if (!isListening || !isExternalMode.get() || pcm == null || length <= 0) return false;
+private BulkScanResult scanExternalFullBufferLocked(short[] pcm, int length) {
+    BulkScanResult res = new BulkScanResult();
+    if (!isListening || !isExternalMode.get() || pcm == null || length <= 0) return res;
 
     final int SR          = SAMPLE_RATE;             // 16000
     final int STRIDE_SAMP = Constants.FRAME_LENGTH;  // 1280
@@ -1150,16 +2795,75 @@ public boolean predictFromExternalFullBuffer_v2(short[] pcm, int length) {
         int nSteps  = 1 + (int) Math.floor((T_total - KWD_CLIP) / (double) STRIDE_SAMP);
         if (nSteps <= 0) {
             Log.w(TAG, "predictFromExternalFullBuffer_v2: nSteps <= 0");
-            return false;
+            return res;
         }
 
-        if (sessions == null || sessions.length == 0) return false;
+        if (sessions == null || sessions.length == 0) return res;
 
         boolean detected = false;
+        res.totalWindows = nSteps;
+
+        // Optional VAD pre-scan: only windows overlapping a speech segment get scored.
+        boolean[] activeStep = null;
+        if (bulkVadPrescan) {
+            res.speechSegments = findSpeechSegments(pcm, length);
+            if (res.speechSegments != null) {
+                activeStep = markSpeechWindows(res.speechSegments, frontPad, nSteps, STRIDE_SAMP, KWD_CLIP);
+            }
+        }
+
+        // Coarse-to-fine: score every coarseFactor-th window, then only the windows around
+        // interesting ones that the coarse pass did not score, and run the hit logic over both.
+        if (coarseSearchEnabled && coarseFactor > 1) {
+            detected = scanCoarseToFine(wav, nSteps, activeStep, res);
+            Log.d(TAG, "predictFromExternalFullBuffer_v2 (coarse-to-fine): " +
+                    (detected ? "Predicted after time: " : "False reported after time: ") + tMs(t0));
+            res.detected = detected;
+            res.elapsedMs = (System.nanoTime() - t0) / 1_000_000L;
+            return res;
+        }
+
+        // Sharded parallel scan: all window scores first, then the same hit logic in time order.
+        if (bulkScanWorkers > 1 && nSteps >= 2 * bulkScanMinShardWindows) {
+            float[][] all = scoreWindowsSharded(wav, nSteps, activeStep);
+            if (all != null) {
+                detected = applyHitsInOrder(all, activeStep, null, nSteps, res);
+                Log.d(TAG, "predictFromExternalFullBuffer_v2 (sharded): " +
+                        (detected ? "Predicted after time: " : "False reported after time: ") + tMs(t0));
+                res.detected = detected;
+                res.elapsedMs = (System.nanoTime() - t0) / 1_000_000L;
+                return res;
+            }
+        }
 
         // ---- 2) Slide PCM windows exactly like Python ----
-        for (int step = 0;
-             step < nSteps && isListening && isExternalMode.get() && !detected;
+        // Bulk mode: one melspec run per block of windows, sliced into the same [T,F] views
+        // the per-chunk path would produce (parity checked in verifyBulkMelParity()).
+        // Batched mode: all windows of a block are scored with one KWS run per model up front.
+        final boolean bulkMel = bulkMelEnabled && bulkMelVerified;
+        final boolean batched = kwsBatchSize > 1;
+        final int blockWindows = bulkMel ? Math.max(1, bulkMelBlockWindows)
+                               : (batched ? kwsBatchSize : 1);
+        float[][][] blockMel = null;    // null inside a block whose bulk run failed -> per-chunk fallback
+        float[][] blockScores = null;   // [model][window in block], batched mode only
+        int blockStart = 0;
+        int blockEnd   = 0;
+
+        // Bulk head: windows lying within the first bulkOptimizeRatio of the input are only
+        // collected, then scored together; the remaining windows are scanned one by one below.
+        int firstStep = 0;
+        if (bulkOptimizeEnabled && length >= bulkMinSamples) {
+            int headSamples = frontPad + (int) (length * (double) bulkOptimizeRatio);
+            int headSteps = Math.min(nSteps, Math.max(0, (headSamples - KWD_CLIP) / STRIDE_SAMP + 1));
+            if (headSteps > 0) {
+                detected = scanBulkHead(wav, headSteps, activeStep, res);
+                firstStep = headSteps;
+                blockEnd = headSteps;
+            }
+        }
+
+        for (int step = firstStep;
+             step < nSteps && isExternalMode.get() && !detected && scanActive();
              step++) {
 
             int windowStart = step * STRIDE_SAMP;
@@ -1167,58 +2871,758 @@ public boolean predictFromExternalFullBuffer_v2(short[] pcm, int length) {
 
             if (windowEnd > T_total) break;
 
-            // Extract PCM chunk [KWD_CLIP] samples
-            short[] chunk = new short[KWD_CLIP];
-            System.arraycopy(wav, windowStart, chunk, 0, KWD_CLIP);
+            if (activeStep != null && !activeStep[step]) {
+                // no speech under this window: counts as a below-threshold score
+                res.skippedWindows++;
+                Arrays.fill(concurrentPredictions, 0);
+                blockEnd = step;  // blocks never span a skipped window
+                continue;
+            }
 
-            // ---- 3) ONNX melspec for this chunk (v2: NO /10+2 here) ----
-            float[][] mel = getMelspectrogramForV2(chunk); // [T,F]
+            // ---- 3) ONNX melspec for this window (v2: NO /10+2 here) ----
+            float[][] mel = null;
+            if ((bulkMel || batched) && step >= blockEnd) {
+                int runEnd = nSteps;
+                if (activeStep != null) {
+                    runEnd = step;
+                    while (runEnd < nSteps && activeStep[runEnd]) runEnd++;
+                }
+                int n = Math.min(blockWindows, runEnd - step);
+                blockStart  = step;
+                blockEnd    = step + n;
+                blockMel    = bulkMel ? getBulkMelWindows(wav, step, n) : null;
+                blockScores = null;
+                if (!scanActive()) break; // the block melspec used up the budget
+                if (batched) {
+                    if (blockMel == null) blockMel = getChunkMelWindows(wav, step, n);
+                    final float[][][] mels = blockMel;
+                    final float[][] scores = new float[sessions.length][n];
+                    forEachModel(sessions.length, i -> runKwsModelOnMelBatch(i, mels, 0, n, scores[i]));
+                    blockScores = scores;
+                    if (!scanActive()) break; // stopped mid-block: unscored windows are NaN
+                }
+            }
+            res.scoredWindows++;
+            if (blockMel != null) {
+                mel = blockMel[step - blockStart];
+            }
+            if (mel == null) {
+                // Extract PCM chunk [KWD_CLIP] samples
+                mel = getMelspectrogramForV2(wav, windowStart, KWD_CLIP); // [T,F]
+            }
             if (mel == null || mel.length == 0 || mel[0] == null) {
                 continue;
             }
 
             // ---- 4) Run each KWS ONNX model on this mel window ----
+            float[] windowScores = null;
+            if (blockScores == null) {
+                final float[][] windowMel = mel;
+                final float[] scores = new float[sessions.length];
+                forEachModel(sessions.length, i -> scores[i] = runKwsModelOnMel(i, windowMel));
+                windowScores = scores;
+            }
             for (int i = 0; i < sessions.length; i++) {
-                float meanPrediction = runKwsModelOnMel(i, mel);
+                float meanPrediction = (blockScores != null)
+                        ? blockScores[i][step - blockStart]
+                        : windowScores[i];
                 // Log.d(TAG, "v2 step=" + step + " t=" +
                 //         (windowStart / (float) SR) + "s model " + i +
                 //         " meanPrediction = " + meanPrediction);
 
-                if (meanPrediction > fakeThresholds[i]) {
-                    if (meanPrediction < keyThreasholds[i]) {
-                        concurrentPredictions[i] = 0;
-                    } else {
-                        concurrentPredictions[i]++;
-                        if (concurrentPredictions[i] >= keyBufferCnts[i]) {
-                            long now = System.currentTimeMillis();
-                            if (lastCallbackInMS[i] + msBetweenCallbacks[i] <= now) {
-                                lastCallbackInMS[i] = now;
-                                String fileName = strippedModelNames[i] + "_prediction_v2.wav";
-                                flushBufferToWav(fileName);
-                                if (keywordDetectedCallback != null) {
-                                    keywordDetectedCallback.accept(true, strippedModelNames[i]);
-                                }
-                                detected = true;
-                            }
-                            concurrentPredictions[i] = 0;
-                        }
-                    }
-                } else {
-                    concurrentPredictions[i] = 0;
+                if (handleBulkScore(i, meanPrediction, step, res)) {
+                    detected = true;
+                    break;
                 }
-
-                if (detected) break;
             }
         }
 
         Log.d(TAG, "predictFromExternalFullBuffer_v2: " +
                 (detected ? "Predicted after time: " : "False reported after time: ") + tMs(t0));
-        return detected;
+        res.detected = detected;
+        res.elapsedMs = (System.nanoTime() - t0) / 1_000_000L;
+        if (activeStep != null) {
+            Log.d(TAG, "predictFromExternalFullBuffer_v2: " + res);
+        }
+        return res;
     } catch (Throwable fatal) {
         Log.e(TAG, "predictFromExternalFullBuffer_v2 failed – stopping detector", fatal);
         stopListening();
-        return false;
+        res.detected = false;
+        return res;
+    }
+}
+
+// Incremental v2 bulk scan for a growing buffer: pcm is the audio of an earlier call on the same
+// stream plus new samples. Scores of windows that lay entirely inside the earlier audio, and the
+// mel frames that did not touch padding, are reused; only the new suffix (and the tail-pad
+// windows, which change as audio is appended) is computed. Hit logic is replayed over all
+// windows, so detections are identical to scanExternalFullBuffer() on the same buffer.
+// streamId == null matches earlier calls by a fingerprint of their audio.
+public BulkScanResult scanIncremental(String streamId, short[] pcm, int length) {
+    synchronized (modelLock) {
+        beginBulkCapture(pcm, length);
+        try {
+            return scanIncrementalLocked(streamId, pcm, length);
+        } finally {
+            bulkCapturePcm = null;
+        }
+    }
+}
+
+private BulkScanResult scanIncrementalLocked(String streamId, short[] pcm, int length) {
+    BulkScanResult res = new BulkScanResult();
+    if (!isListening || !isExternalMode.get() || pcm == null || length <= 0) return res;
+    if (sessions == null || sessions.length == 0) return res;
+
+    final int STRIDE_SAMP = Constants.FRAME_LENGTH;
+    final int KWD_CLIP    = V2_KWD_CLIP_SAMPLES;
+    long t0 = tNow();
+    try {
+        BulkScanSession state = findBulkSession(streamId, pcm, length);
+        int prevLength = (state != null) ? state.length : 0;
+
+        // Keep WAV debug behaviour (3s ring buffer) for the new samples only
+        for (int off = prevLength; off < length; off += STRIDE_SAMP) {
+            int frameLen = Math.min(STRIDE_SAMP, length - off);
+            short[] frame = new short[frameLen];
+            System.arraycopy(pcm, off, frame, 0, frameLen);
+            storeFrame(frame, frameLen);
+        }
+
+        int frontPad = Math.max(0, KWD_CLIP - length);
+        short[] wav = new short[frontPad + length + STRIDE_SAMP * 30];
+        System.arraycopy(pcm, 0, wav, frontPad, length);
+        int nSteps = 1 + (wav.length - KWD_CLIP) / STRIDE_SAMP;
+        res.totalWindows = nSteps;
+
+        int reuse = 0;
+        if (state != null && frontPad == 0 && state.scores != null && state.scores.length == sessions.length) {
+            reuse = Math.min(state.cachedSteps, nSteps);
+        }
+        float[][] scores = newScoreMatrix(nSteps);
+        for (int i = 0; i < sessions.length && reuse > 0; i++) {
+            System.arraycopy(state.scores[i], 0, scores[i], 0, reuse);
+        }
+        res.reusedWindows = reuse;
+
+        // windows entirely inside pcm (no padding) are final and can be cached for the next push
+        int newCached = (frontPad == 0) ? Math.min(nSteps, (length - KWD_CLIP) / STRIDE_SAMP + 1) : 0;
+        BulkScanSession next = new BulkScanSession(streamId);
+        scoreStepsIncremental(wav, reuse, nSteps, (reuse > 0) ? state : null,
+                newCached, (frontPad == 0) ? length : 0, scores, next);
+
+        boolean detected = applyHitsInOrder(scores, null, null, nSteps, res);
+
+        // an interrupted scan leaves unscored (NaN) windows: keep the earlier state instead
+        if (!scanBudgetStopped()) {
+            next.length = length;
+            next.fingerprint = BulkScanSession.fingerprint(pcm, length);
+            next.cachedSteps = newCached;
+            next.scores = new float[sessions.length][];
+            for (int i = 0; i < sessions.length; i++) {
+                next.scores[i] = Arrays.copyOf(scores[i], newCached);
+            }
+            storeBulkSession(state, next);
+        }
+
+        res.detected = detected;
+        res.elapsedMs = (System.nanoTime() - t0) / 1_000_000L;
+        Log.d(TAG, "scanIncremental: " + res);
+        return res;
+    } catch (Throwable fatal) {
+        Log.e(TAG, "scanIncremental failed – stopping detector", fatal);
+        stopListening();
+        res.detected = false;
+        return res;
+    }
+}
+
+// Drop the incremental state of one stream (null: all streams).
+public void endIncrementalScan(String streamId) {
+    synchronized (bulkSessions) {
+        if (streamId == null) {
+            bulkSessions.clear();
+        } else {
+            bulkSessions.remove(streamId);
+        }
+    }
+}
+
+private BulkScanSession findBulkSession(String streamId, short[] pcm, int length) {
+    synchronized (bulkSessions) {
+        if (streamId != null) {
+            BulkScanSession s = bulkSessions.get(streamId);
+            if (s != null && !s.isPrefixOf(pcm, length)) {
+                Log.d(TAG, "findBulkSession: stream " + streamId + " restarted, dropping cached state");
+                bulkSessions.remove(streamId);
+                return null;
+            }
+            return s;
+        }
+        BulkScanSession best = null;
+        for (BulkScanSession s : bulkSessions.values()) {
+            if (s.streamId == null && (best == null || s.length > best.length) && s.isPrefixOf(pcm, length)) {
+                best = s;
+            }
+        }
+        return best;
+    }
+}
+
+private void storeBulkSession(BulkScanSession previous, BulkScanSession next) {
+    synchronized (bulkSessions) {
+        if (previous != null) {
+            bulkSessions.values().remove(previous);
+        }
+        String key = (next.streamId != null) ? next.streamId : ("#" + (++bulkSessionSeq));
+        bulkSessions.put(key, next);
+        Iterator<String> it = bulkSessions.keySet().iterator();
+        while (bulkSessions.size() > MAX_BULK_SESSIONS && it.hasNext()) {
+            it.next();
+            it.remove();
+        }
+    }
+}
+
+// Score windows [from, nSteps) of wav into scores. With verified bulk melspec, mel frames are
+// computed once per block and frames cached in `cached` are reused; frames that lie entirely
+// inside the first stableLength samples (and belong to windows >= keepSteps) are handed to
+// `next` for the following push.
+private void scoreStepsIncremental(short[] wav, int from, int nSteps, BulkScanSession cached,
+                                   int keepSteps, int stableLength, float[][] scores,
+                                   BulkScanSession next) throws OrtException {
+    final boolean bulkMel = bulkMelEnabled && bulkMelVerified;
+    final boolean batched = kwsBatchSize > 1;
+    final int blockWindows = bulkMel ? Math.max(1, bulkMelBlockWindows)
+                           : (batched ? kwsBatchSize : 1);
+    final KwsModelPlan[] plans = batched ? null : kwsPlans;
+    final float[] blockOut = new float[blockWindows];
+
+    if (!bulkMel) {
+        for (int b0 = from; b0 < nSteps && scanActive(); b0 += blockWindows) {
+            int n = Math.min(blockWindows, nSteps - b0);
+            scoreMelBlock(getChunkMelWindows(wav, b0, n), n, b0, scores, batched, plans, null, blockOut);
+        }
+        return;
+    }
+
+    final int hop = melHopSamples;
+    final int framesPerStep = Constants.FRAME_LENGTH / hop;
+    final int stableFrames = (stableLength >= melFrameSamples) ? 1 + (stableLength - melFrameSamples) / hop : 0;
+    final int keepFrom = keepSteps * framesPerStep;
+    ArrayList<float[]> keep = new ArrayList<>();
+    float[][] cacheRows = (cached != null) ? cached.melFrames : null;
+    int cacheBase = (cached != null) ? cached.melBase : 0;
+
+    for (int b0 = from; b0 < nSteps && scanActive(); b0 += blockWindows) {
+        int n = Math.min(blockWindows, nSteps - b0);
+        int needFrom = b0 * framesPerStep;
+        int needTo = (b0 + n - 1) * framesPerStep + melClipFrames;
+        float[][] rows = new float[needTo - needFrom][];
+
+        int have = needFrom;
+        while (have < needTo && cacheRows != null && have >= cacheBase && have < cacheBase + cacheRows.length) {
+            rows[have - needFrom] = cacheRows[have - cacheBase];
+            have++;
+        }
+        while (have < needTo && have >= keepFrom && have < keepFrom + keep.size()) {
+            rows[have - needFrom] = keep.get(have - keepFrom);
+            have++;
+        }
+        if (have < needTo) {
+            float[][] fresh = getMelspectrogramForV2(wav, have * hop, (needTo - 1 - have) * hop + melFrameSamples);
+            if (fresh == null || fresh.length != needTo - have) {
+                Log.w(TAG, "scoreStepsIncremental: unexpected frame count, per-chunk for this block");
+                scoreMelBlock(getChunkMelWindows(wav, b0, n), n, b0, scores, batched, plans, null, blockOut);
+                keep.clear();
+                cacheRows = null;
+                continue;
+            }
+            System.arraycopy(fresh, 0, rows, have - needFrom, fresh.length);
+        }
+
+        for (int f = needFrom; f < needTo && f < stableFrames; f++) {
+            if (f >= keepFrom && f == keepFrom + keep.size()) keep.add(rows[f - needFrom]);
+        }
+
+        float[][][] windows = new float[n][][];
+        for (int w = 0; w < n; w++) {
+            windows[w] = Arrays.copyOfRange(rows, w * framesPerStep, w * framesPerStep + melClipFrames);
+        }
+        scoreMelBlock(windows, n, b0, scores, batched, plans, null, blockOut);
+    }
+
+    next.melBase = keepFrom;
+    next.melFrames = keep.isEmpty() ? null : keep.toArray(new float[0][]);
+}
+
+// v2 bulk head: mel windows for steps [0, headSteps) are collected into bulkWindows without
+// scoring, scored with one batched call per model (scoreBulkWindows), and the hit logic is then
+// applied in time order. Collected in chunks of BULK_HEAD_MAX_WINDOWS to bound memory.
+private static final int BULK_HEAD_MAX_WINDOWS = 512;
+
+private boolean scanBulkHead(short[] wav, int headSteps, boolean[] activeStep, BulkScanResult res)
+        throws OrtException, IOException {
+    final boolean bulkMel = bulkMelEnabled && bulkMelVerified;
+    final int blockWindows = bulkMel ? Math.max(1, bulkMelBlockWindows) : Math.max(1, kwsBatchSize);
+    boolean detected = false;
+
+    for (int chunk = 0; chunk < headSteps && !detected && scanActive(); chunk += BULK_HEAD_MAX_WINDOWS) {
+        int chunkEnd = Math.min(headSteps, chunk + BULK_HEAD_MAX_WINDOWS);
+
+        // 1) collect (melspec only)
+        bulkCollecting = true;
+        bulkWindows.clear();
+        int[] windowStep = new int[chunkEnd - chunk];
+        int step = chunk;
+        while (step < chunkEnd && scanActive()) {
+            if (activeStep != null && !activeStep[step]) {
+                step++;
+                continue;
+            }
+            int end = step + 1;
+            while (end < chunkEnd && end - step < blockWindows && (activeStep == null || activeStep[end])) end++;
+            int n = end - step;
+            float[][][] mels = bulkMel ? getBulkMelWindows(wav, step, n) : null;
+            if (mels == null) mels = getChunkMelWindows(wav, step, n);
+            for (int w = 0; w < n; w++) {
+                windowStep[bulkWindows.size()] = step + w;
+                bulkWindows.add(mels[w]);
+            }
+            step = end;
+        }
+        bulkCollecting = false;
+        int collectEnd = step; // < chunkEnd if the scan budget ran out while collecting
+
+        // 2) score everything collected at once
+        float[][] scores = scoreBulkWindows();
+        int collected = bulkWindows.size();
+
+        // 3) hit logic in time order (skipped windows reset the consecutive counts)
+        int next = 0;
+        for (step = chunk; step < collectEnd && !detected && isListening; step++) {
+            if (next >= collected || windowStep[next] != step) {
+                res.skippedWindows++;
+                Arrays.fill(concurrentPredictions, 0);
+                continue;
+            }
+            float[][] mel = bulkWindows.get(next);
+            int w = next++;
+            if (scanBudgetStopped() && unscored(scores, w)) break; // budget ran out while scoring
+            res.scoredWindows++;
+            if (mel == null || mel.length == 0 || mel[0] == null) continue;
+            for (int i = 0; i < sessions.length; i++) {
+                if (handleBulkScore(i, scores[i][w], step, res)) {
+                    detected = true;
+                    break;
+                }
+            }
+        }
+        bulkWindows.clear();
+    }
+    return detected;
+}
+
+// Coarse-to-fine v2 bulk scan over speechStep (null = every window). The fine pass scores only the
+// fine windows the coarse pass left out; windows outside the fine mask count as pruned. If the
+// budget runs out during the coarse pass, the hit logic stops at the first unscored coarse window.
+private boolean scanCoarseToFine(short[] wav, int nSteps, boolean[] speechStep, BulkScanResult res)
+        throws OrtException, IOException {
+    boolean[] coarseMask = coarseStepMask(nSteps, speechStep);
+    float[][] scores = newScoreMatrix(nSteps);
+    scoreShard(wav, 0, nSteps, coarseMask, scores);
+    int limit = nSteps;
+    for (int step = 0; step < nSteps; step++) {
+        if (!coarseMask[step]) continue;
+        if (scanBudgetStopped() && Float.isNaN(scores[0][step])) {
+            limit = step;
+            break;
+        }
+        res.coarseWindows++;
+    }
+
+    boolean[] fineMask = fineMaskFromCoarse(scores, coarseMask, speechStep);
+    boolean[] fineOnly = new boolean[nSteps];
+    boolean[] pruned = new boolean[nSteps];
+    for (int step = 0; step < nSteps; step++) {
+        fineOnly[step] = fineMask[step] && !coarseMask[step];
+        pruned[step] = !fineMask[step] && (speechStep == null || speechStep[step]);
+    }
+    float[][] fine = (bulkScanWorkers > 1 && nSteps >= 2 * bulkScanMinShardWindows)
+            ? scoreWindowsSharded(wav, nSteps, fineOnly) : null;
+    if (fine != null) {
+        for (int i = 0; i < scores.length; i++) {
+            for (int step = 0; step < nSteps; step++) {
+                if (fineOnly[step]) scores[i][step] = fine[i][step];
+            }
+        }
+    } else {
+        scoreShard(wav, 0, nSteps, fineOnly, scores);
+    }
+    return applyHitsInOrder(scores, fineMask, pruned, limit, res);
+}
+
+// Sharded scoring for the v2 bulk scan: [model][step] scores, NaN where the window was skipped
+// or its mel was empty. Shards are contiguous step ranges; a shard's audio overlaps the next one
+// by KWD_CLIP - stride samples, so every window is scored from exactly the samples the serial
+// scan uses. Returns null on failure (caller falls back to the serial scan).
+private float[][] scoreWindowsSharded(final short[] wav, int nSteps, final boolean[] activeStep) {
+    ExecutorService ex = bulkScanExecutor;
+    if (ex == null || sessions == null) return null;
+
+    final float[][] scores = newScoreMatrix(nSteps);
+
+    int shards = Math.max(1, Math.min(bulkScanWorkers, nSteps / bulkScanMinShardWindows));
+    List<Future<?>> pending = new ArrayList<>(shards);
+    try {
+        for (int s = 0; s < shards; s++) {
+            final int s0 = (int) ((long) nSteps * s / shards);
+            final int s1 = (int) ((long) nSteps * (s + 1) / shards);
+            pending.add(ex.submit(() -> {
+                scoreShard(wav, s0, s1, activeStep, scores);
+                return null;
+            }));
+        }
+        for (Future<?> f : pending) f.get();
+        return scores;
+    } catch (Exception e) {
+        Log.w(TAG, "scoreWindowsSharded failed, using the serial scan: " + e.getMessage());
+        for (Future<?> f : pending) f.cancel(true);
+        return null;
+    }
+}
+
+// One shard: windows [s0, s1) in blocks (bulk melspec / batched KWS as configured).
+// Each shard owns its plans and batch input buffers, so shards never contend on a model's input
+// tensor (single window) or on the synchronized shared plan (batched per-window fallback).
+private void scoreShard(short[] wav, int s0, int s1, boolean[] activeStep, float[][] scores) throws OrtException {
+    final int numModels = scores.length;
+    final boolean bulkMel = bulkMelEnabled && bulkMelVerified;
+    final boolean batched = kwsBatchSize > 1;
+    final int blockWindows = bulkMel ? Math.max(1, bulkMelBlockWindows)
+                           : (batched ? kwsBatchSize : 1);
+    KwsModelPlan[] plans = createWorkerPlans();
+    float[][] buffers = batched ? new float[numModels][] : null;
+    try {
+        float[] blockOut = new float[blockWindows];
+        int step = s0;
+        while (step < s1 && scanActive()) {
+            if (activeStep != null && !activeStep[step]) {
+                step++;
+                continue;
+            }
+            int end = step + 1;
+            while (end < s1 && end - step < blockWindows && (activeStep == null || activeStep[end])) end++;
+            int n = end - step;
+
+            float[][][] mels = bulkMel ? getBulkMelWindows(wav, step, n) : null;
+            if (mels == null) mels = getChunkMelWindows(wav, step, n);
+
+            scoreMelBlock(mels, n, step, scores, batched, plans, buffers, blockOut);
+            step = end;
+        }
+    } finally {
+        closeWorkerPlans(plans);
+    }
+}
+
+// Score mels[0 .. n) as windows step .. step+n into scores[model][..]. plans / buffers: a worker's
+// own (see runKwsModelOnMelBatch), null for the shared ones. Empty windows are NaN for every model.
+private void scoreMelBlock(float[][][] mels, int n, int step, float[][] scores, boolean batched,
+                           KwsModelPlan[] plans, float[][] buffers, float[] blockOut) throws OrtException {
+    final int numModels = scores.length;
+    final float[][] silentWindow = silenceWindow;
+    final float[] silentScores = silenceWindowScores;
+    if (plans == null && !batched) plans = kwsPlans;
+    for (int i = 0; i < numModels; i++) {
+        if (batched) {
+            runKwsModelOnMelBatch(i, mels, 0, n, blockOut, plans == null ? null : plans[i], buffers);
+            System.arraycopy(blockOut, 0, scores[i], step, n);
+        } else {
+            for (int w = 0; w < n; w++) {
+                if (budgetSpent()) {
+                    Arrays.fill(scores[i], step + w, step + n, Float.NaN);
+                    break;
+                }
+                float[][] mel = mels[w];
+                if (mel != null && mel == silentWindow && silentScores != null && i < silentScores.length) {
+                    scores[i][step + w] = silentScores[i];
+                } else if (mel != null && mel.length > 0 && mel[0] != null) {
+                    scores[i][step + w] = plans[i].score(mel);
+                }
+            }
+        }
+    }
+    for (int w = 0; w < n; w++) {
+        float[][] mel = mels[w];
+        if (mel == null || mel.length == 0 || mel[0] == null) {
+            for (int i = 0; i < numModels; i++) scores[i][step + w] = Float.NaN;
+        }
+    }
+}
+
+// Private single-window plans for a worker (the shared plans[] serialize per model).
+private KwsModelPlan[] createWorkerPlans() throws OrtException {
+    KwsModelPlan[] plans = new KwsModelPlan[sessions.length];
+    try {
+        for (int i = 0; i < sessions.length; i++) {
+            plans[i] = KwsModelPlan.create(env, sessions[i], inputNames[i].get(0));
+        }
+    } catch (OrtException e) {
+        closeWorkerPlans(plans);
+        throw e;
+    }
+    return plans;
+}
+
+private static void closeWorkerPlans(KwsModelPlan[] plans) {
+    if (plans == null) return;
+    for (KwsModelPlan plan : plans) {
+        if (plan != null) plan.close();
+    }
+}
+
+// Serial hit logic over a precomputed [model][step] score matrix, in time order, exactly as the
+// serial scan applies it (first detection ends the scan). NaN = empty mel window. Inactive steps
+// count as pruned where prunedStep is set (coarse-to-fine), as VAD-skipped otherwise.
+private boolean applyHitsInOrder(float[][] all, boolean[] activeStep, boolean[] prunedStep, int nSteps,
+                                 BulkScanResult res) throws IOException {
+    boolean detected = false;
+    final boolean truncated = scanBudgetStopped();
+    for (int step = 0;
+         step < nSteps && isListening && isExternalMode.get() && !detected;
+         step++) {
+        if (activeStep != null && !activeStep[step]) {
+            if (prunedStep != null && prunedStep[step]) res.prunedWindows++;
+            else res.skippedWindows++;
+            Arrays.fill(concurrentPredictions, 0);
+            continue;
+        }
+        if (Float.isNaN(all[0][step]) && truncated) break; // not scored before the budget ran out
+        res.scoredWindows++;
+        if (Float.isNaN(all[0][step])) continue; // empty mel, same as the serial path
+        for (int i = 0; i < sessions.length; i++) {
+            if (handleBulkScore(i, all[i][step], step, res)) {
+                detected = true;
+                break;
+            }
+        }
+    }
+    return detected;
+}
+
+private float[][] newScoreMatrix(int nSteps) {
+    float[][] scores = new float[sessions.length][nSteps];
+    for (float[] row : scores) Arrays.fill(row, Float.NaN);
+    return scores;
+}
+
+// Coarse pass steps: every coarseFactor-th window plus the last one (within baseMask if given).
+private boolean[] coarseStepMask(int nSteps, boolean[] baseMask) {
+    int f = Math.max(1, coarseFactor);
+    boolean[] mask = new boolean[nSteps];
+    for (int step = 0; step < nSteps; step++) {
+        if ((step % f == 0 || step == nSteps - 1) && (baseMask == null || baseMask[step])) {
+            mask[step] = true;
+        }
+    }
+    return mask;
+}
+
+// Fine pass windows: every step within coarseFactor - 1 (+ the longest consecutive-hit run) of a
+// coarse window where any model scored >= coarseInterest, restricted to baseMask if given.
+private boolean[] fineMaskFromCoarse(float[][] scores, boolean[] coarseMask, boolean[] baseMask) {
+    int nSteps = coarseMask.length;
+    int reach = Math.max(1, coarseFactor) - 1;
+    for (int cnt : keyBufferCnts) reach = Math.max(reach, Math.max(1, coarseFactor) - 1 + cnt);
+    boolean[] fine = new boolean[nSteps];
+    for (int step = 0; step < nSteps; step++) {
+        if (!coarseMask[step]) continue;
+        boolean interesting = false;
+        for (float[] row : scores) {
+            if (!Float.isNaN(row[step]) && row[step] >= coarseInterest) {
+                interesting = true;
+                break;
+            }
+        }
+        if (!interesting) continue;
+        int from = Math.max(0, step - reach);
+        int to = Math.min(nSteps - 1, step + reach);
+        for (int s = from; s <= to; s++) {
+            if (baseMask == null || baseMask[s]) fine[s] = true;
+        }
+    }
+    return fine;
+}
+
+// Result of compareCoarseToFine(): detections of the exhaustive scan vs the coarse-to-fine scan
+// over the same buffer. Detections are "model@seconds" and include every hit, not just the first.
+public static class SearchComparison {
+    public List<String> exhaustiveHits = new ArrayList<>();
+    public List<String> coarseToFineHits = new ArrayList<>();
+    public List<String> missed = new ArrayList<>();   // in exhaustive, not in coarse-to-fine
+    public List<String> extra = new ArrayList<>();    // in coarse-to-fine only (should stay empty)
+    public int exhaustiveWindows;
+    public int coarseToFineWindows;                   // coarse + fine windows scored
+    public float recall;                              // 1.0 when nothing was missed
+    public float windowSpeedup;                       // exhaustiveWindows / coarseToFineWindows
+
+    @Override
+    public String toString() {
+        return "SearchComparison{recall=" + recall + ", speedup=" + windowSpeedup +
+                ", exhaustive=" + exhaustiveHits + ", coarseToFine=" + coarseToFineHits +
+                ", missed=" + missed + ", windows=" + exhaustiveWindows + "/" + coarseToFineWindows + "}";
+    }
+}
+
+// Measurement mode for the coarse-to-fine search: scores every window of the buffer once and
+// replays the hit logic for both schedules. No callbacks, WAV dumps or detector state changes.
+public SearchComparison compareCoarseToFine(short[] pcm, int length) {
+    synchronized (modelLock) {
+        return compareCoarseToFineLocked(pcm, length);
+    }
+}
+
+private SearchComparison compareCoarseToFineLocked(short[] pcm, int length) {
+    SearchComparison cmp = new SearchComparison();
+    if (!isListening || !isExternalMode.get() || pcm == null || length <= 0) return cmp;
+    if (sessions == null || sessions.length == 0) return cmp;
+
+    final int STRIDE_SAMP = Constants.FRAME_LENGTH;
+    int frontPad = Math.max(0, V2_KWD_CLIP_SAMPLES - length);
+    short[] wav = new short[frontPad + length + STRIDE_SAMP * 30];
+    System.arraycopy(pcm, 0, wav, frontPad, length);
+    int nSteps = 1 + (wav.length - V2_KWD_CLIP_SAMPLES) / STRIDE_SAMP;
+
+    try {
+        float[][] scores = scoreWindowsSharded(wav, nSteps, null);
+        if (scores == null) {
+            scores = newScoreMatrix(nSteps);
+            scoreShard(wav, 0, nSteps, null, scores);
+        }
+        boolean[] coarseMask = coarseStepMask(nSteps, null);
+        boolean[] fineMask = fineMaskFromCoarse(scores, coarseMask, null);
+
+        cmp.exhaustiveWindows = nSteps;
+        for (int step = 0; step < nSteps; step++) {
+            if (coarseMask[step] || fineMask[step]) cmp.coarseToFineWindows++;
+        }
+        cmp.exhaustiveHits = replayHits(scores, null);
+        cmp.coarseToFineHits = replayHits(scores, fineMask);
+        for (String hit : cmp.exhaustiveHits) {
+            if (!cmp.coarseToFineHits.contains(hit)) cmp.missed.add(hit);
+        }
+        for (String hit : cmp.coarseToFineHits) {
+            if (!cmp.exhaustiveHits.contains(hit)) cmp.extra.add(hit);
+        }
+        cmp.recall = cmp.exhaustiveHits.isEmpty() ? 1.0f
+                : 1.0f - cmp.missed.size() / (float) cmp.exhaustiveHits.size();
+        cmp.windowSpeedup = cmp.coarseToFineWindows == 0 ? Float.POSITIVE_INFINITY
+                : nSteps / (float) cmp.coarseToFineWindows;
+        Log.i(TAG, "compareCoarseToFine: " + cmp);
+    } catch (Exception e) {
+        Log.e(TAG, "compareCoarseToFine failed: " + e.getMessage());
+    }
+    return cmp;
+}
+
+// Side-effect-free copy of the handleKwsScore() rules over a score matrix. Windows outside
+// `mask` reset the consecutive counts (as a skipped window does); msBetweenCallbacks is applied
+// in audio time. Returns every hit as "model@seconds".
+private List<String> replayHits(float[][] scores, boolean[] mask) {
+    List<String> hits = new ArrayList<>();
+    int numModels = scores.length;
+    int[] consecutive = new int[numModels];
+    long[] lastHitMs = new long[numModels];
+    Arrays.fill(lastHitMs, Long.MIN_VALUE / 2);
+    int nSteps = numModels > 0 ? scores[0].length : 0;
+    for (int step = 0; step < nSteps; step++) {
+        if (mask != null && !mask[step]) {
+            Arrays.fill(consecutive, 0);
+            continue;
+        }
+        long nowMs = (long) step * Constants.FRAME_LENGTH * 1000L / SAMPLE_RATE;
+        for (int i = 0; i < numModels; i++) {
+            float score = scores[i][step];
+            if (Float.isNaN(score)) continue;
+            if (score <= fakeThresholds[i] || score < keyThreasholds[i]) {
+                consecutive[i] = 0;
+                continue;
+            }
+            if (++consecutive[i] >= keyBufferCnts[i]) {
+                if (lastHitMs[i] + msBetweenCallbacks[i] <= nowMs) {
+                    lastHitMs[i] = nowMs;
+                    hits.add(strippedModelNames[i] + "@" + String.format(Locale.US, "%.2f", nowMs / 1000.0));
+                }
+                consecutive[i] = 0;
+            }
+        }
+    }
+    return hits;
+}
+
+// v2 bulk VAD pre-scan: VAD over pcm[0 .. length) in FRAME_LENGTH frames -> merged speech
+// segments [start, end) in input samples, widened by bulkVadMarginMs on both sides.
+// Returns null if no VAD is loaded or it fails (caller then scans everything).
+// Runs inside the scan (modelLock), which also guards bulkVadDetector. Stops with null when the
+// scan budget runs out; the scan then stops at its first window.
+private int[][] findSpeechSegments(short[] pcm, int length) {
+    VadDetector vad = bulkVadDetector;
+    if (vad == null) {
+        Log.w(TAG, "findSpeechSegments: VAD pre-scan enabled but no VAD loaded");
+        return null;
+    }
+    final int FRAME = Constants.FRAME_LENGTH;
+    final int margin = (int) ((long) bulkVadMarginMs * SAMPLE_RATE / 1000);
+    List<int[]> segments = new ArrayList<>();
+    short[] frame = new short[FRAME];
+    synchronized (vad) {
+        try {
+            vad.reset();
+            int segStart = -1;
+            int segEnd = -1;
+            for (int off = 0; off < length; off += FRAME) {
+                if (!scanActive()) return null;
+                int n = Math.min(FRAME, length - off);
+                System.arraycopy(pcm, off, frame, 0, n);
+                if (n < FRAME) Arrays.fill(frame, n, FRAME, (short) 0);
+                if (vad.predict_2(frame) < VADThreshold) continue;
+
+                int start = Math.max(0, off - margin);
+                int end = Math.min(length, off + n + margin);
+                if (segStart >= 0 && start <= segEnd) {
+                    segEnd = Math.max(segEnd, end);
+                } else {
+                    if (segStart >= 0) segments.add(new int[]{segStart, segEnd});
+                    segStart = start;
+                    segEnd = end;
+                }
+            }
+            if (segStart >= 0) segments.add(new int[]{segStart, segEnd});
+        } catch (Throwable t) {
+            Log.w(TAG, "findSpeechSegments: VAD failed, scanning the whole buffer: " + t.getMessage());
+            return null;
+        } finally {
+            vad.reset();
+        }
+    }
+    return segments.toArray(new int[0][]);
+}
+
+// Window `step` covers wav[step*stride, step*stride+clip); wav = frontPad zeros + pcm + tail pad.
+private static boolean[] markSpeechWindows(int[][] segments, int frontPad, int nSteps, int stride, int clip) {
+    boolean[] active = new boolean[nSteps];
+    for (int[] seg : segments) {
+        long segStart = (long) seg[0] + frontPad;
+        long segEnd = (long) seg[1] + frontPad;
+        // overlap: step*stride < segEnd && step*stride + clip > segStart
+        int first = (int) Math.max(0, (segStart - clip) / stride);
+        for (int step = first; step < nSteps && (long) step * stride < segEnd; step++) {
+            if ((long) step * stride + clip > segStart) active[step] = true;
+        }
     }
+    return active;
 }
 
     public void startListening(float threshold) throws OrtException {
@@ -1231,6 +3635,10 @@ public boolean predictFromExternalFullBuffer_v2(short[] pcm, int length) {
     }
 
     public void stopListening() {
+        synchronized (pendingLock) {
+            startDeferred = false; // a start requested while loading no longer applies
+            pendingAudio = null;
+        }
         if (!isListening) {
             //Log.d(TAG, "Stop listening is called while not listening.");
             return;
@@ -1269,10 +3677,8 @@ public boolean predictFromExternalFullBuffer_v2(short[] pcm, int length) {
 
     private void collectBulkWindowFromLatestMel() {
         int ndx = getMelNumberOfRows();
-        if (ndx < 76) return;
-        float[][][][] melspectrogramSlice = getMelspecSubArray(ndx - 76, ndx);
-        float[][] flattenedSubArray = flattenSubArray(melspectrogramSlice); // 76 x 32
-        bulkWindows.add(flattenedSubArray);
+        if (ndx < MEL_WINDOW_FRAMES) return;
+        bulkWindows.add(melspectrogramBuffer.lastRows(MEL_WINDOW_FRAMES)); // 76 x 32
     }
 
 
@@ -1282,46 +3688,34 @@ public boolean predictFromExternalFullBuffer_v2(short[] pcm, int length) {
             throw new IllegalArgumentException("The number of input frames must be at least 400 samples @ 16khz (25 ms)!");
         }
 
-        List<Short> list;
-        synchronized (rawDataBuffer) {
-            list = new ArrayList<>(rawDataBuffer);
+        // last nSamples + 3 hops, straight from the ring into the float scratch (no boxing/copies)
+        int len;
+        synchronized (this) {
+            len = rawDataBuffer.readLast(nSamples + 160 * 3, streamMelInput, 0, INV_SHORT_MAX);
         }
-        int start = Math.max(0, list.size() - nSamples - 160 * 3);
 
-        int[] intArray = list.subList(start, list.size()).stream()
-            .mapToInt(Short::intValue)
-            .toArray();
-
-        short[] rawData = new short[intArray.length];
-        for (int i = 0; i < intArray.length; i++) {
-            rawData[i] = (short) intArray[i];
+        LogMelFrontend frontend = javaMelFrontend;
+        if (frontend != null) {
+            // same frames the ONNX call would return for this window
+            frontend.appendStreaming(streamMelInput, len, melspectrogramBuffer, 10f, 2f);
+            return;
         }
 
-        float[][] melspec = getMelspectrogramShort(rawData);
+        float[][] melspec = getMelspectrogram(streamMelInput, len);
         updateMelspectrogramBuffer(melspec);
-        // //Log.d(TAG, "streamingMelspectrogram: " + tMs(t0) + " (nSamples=" + nSamples + ", raw=" + rawData.length + ")");
+        // //Log.d(TAG, "streamingMelspectrogram: " + tMs(t0) + " (nSamples=" + nSamples + ", raw=" + len + ")");
     }
 
+    // O(1) per row; the ring drops the oldest rows past MEL_SPECTROGRAM_MAX_LEN
     public void appendMelspec(float[][] melspec) {
-        for (float[] row : melspec) {
-            melspectrogramBuffer.add(row);
-        }
+        melspectrogramBuffer.append(melspec);
     }
     public int getMelNumberOfRows() {
         return melspectrogramBuffer.size();
     }
 
-    private void truncateMelspectrogramBuffer() {
-        while (melspectrogramBuffer.size() > MEL_SPECTROGRAM_MAX_LEN) {
-            melspectrogramBuffer.remove(0);
-        }
-    }
-
     private void updateMelspectrogramBuffer(float[][] melspec) {
         appendMelspec(melspec);
-        if (getMelNumberOfRows() > MEL_SPECTROGRAM_MAX_LEN) {
-            truncateMelspectrogramBuffer();
-        }
     }
 
 
@@ -1335,20 +3729,7 @@ public boolean predictFromExternalFullBuffer_v2(short[] pcm, int length) {
     }
 
     private synchronized void bufferRawData(short[] x) {
-        for (short v : x) {
-            if (rawDataBuffer.size() >= RAW_BUFFER_MAX_LEN) {
-                rawDataBuffer.pollFirst();
-            }
-            rawDataBuffer.add(v);
-        }
-    }
-
-    private void bufferRawDataOld(short[] x) {
-        for (short v : x) {
-            if (rawDataBuffer.size() >= RAW_BUFFER_MAX_LEN)
-                rawDataBuffer.pollFirst();
-            rawDataBuffer.add(v);
-        }
+        rawDataBuffer.write(x, 0, x.length);
     }
 
     private float[][] getMelspectrogramShort(short[] audioData) {
@@ -1552,52 +3933,27 @@ private static float[][] coerceByGuessingTF3D(float[][][] m3) {
 }
 
     private float[][] getMelspectrogram(float[] audioDataFloat) {
+        return getMelspectrogram(audioDataFloat, audioDataFloat.length);
+    }
+
+    // melspec over audioDataFloat[0 .. length); lets the streaming path pass a reusable scratch array
+    private float[][] getMelspectrogram(float[] audioDataFloat, int length) {
         //long t0 = tNow();
         //Log.d(TAG, "getMelspectrogram()");
-
-        long[] inputShape;
-        if (melspecInputRank == 1) {
-            // Python: waveform.numpy() 1D
-            inputShape = new long[]{audioDataFloat.length};
-        } else {
-            // Python: waveform.numpy() 2D [1, N]
-            inputShape = new long[]{1, audioDataFloat.length};
-        }
-        OnnxTensor inputTensor = null;
-        OrtSession.Result result = null;
-        String melSpecInputName = null;
-        Map<String, OnnxTensor> inputs = null;
-
         try {
-            inputTensor = OnnxTensor.createTensor(env, FloatBuffer.wrap(audioDataFloat), inputShape);
+            float[][] melspectrogram = runMelspecOnnx(audioDataFloat, length);
 
-            inputs = new HashMap<>();
-            melSpecInputName = melspecInputNames.iterator().next();
-            inputs.put(melSpecInputName, inputTensor);
-
-            //long tRun0 = tNow();
-            result = melspecSession.run(inputs);
-            ////Log.d(TAG, "melspecSession.run: " + tMs(tRun0));
-
-            Object output = result.get(0).getValue();
-            // float[][][][] melspectrogram4D = (float[][][][]) output;
-            // float[][] melspectrogram = (float [][]) squeeze4D(melspectrogram4D);
-            float[][] melspectrogram = coerceMelTo2D(output);
-            
-            //long tTf0 = tNow();
-            Function<Float, Float> melspecTransform = x -> x / 10 + 2;
-            float [][] spec = transform(melspectrogram, melspecTransform);
-            ////Log.d(TAG, "melspec transform: " + tMs(tTf0));
-            ////Log.d(TAG, "getMelspectrogram total: " + tMs(t0) + " (len=" + audioDataFloat.length + ")");
-            return spec;
+            // x / 10 + 2, in place (the output arrays are ours; no boxed Function per element)
+            for (float[] row : melspectrogram) {
+                for (int j = 0; j < row.length; j++) {
+                    row[j] = row[j] / 10 + 2;
+                }
+            }
+            ////Log.d(TAG, "getMelspectrogram total: " + tMs(t0) + " (len=" + length + ")");
+            return melspectrogram;
         } catch (Exception e) {
             Log.e(TAG, "Failed to run melspectrogram session: " + e.getMessage());
             return new float[0][0];
-        } finally {
-            if (inputs != null) inputs.remove(melSpecInputName);
-            melSpecInputName = null;
-            if (result != null) result.close();
-            if (inputTensor != null) inputTensor.close();
         }
     }
 
@@ -1654,7 +4010,7 @@ private static float[][] coerceByGuessingTF3D(float[][][] m3) {
     }
 
     public int getNumberOfColumns() {
-        return melspectrogramBuffer.isEmpty() ? 0 : melspectrogramBuffer.get(0).length;
+        return melspectrogramBuffer.size() == 0 ? 0 : melspectrogramBuffer.bins();
     }
 
     public float[][][][] getMelspecSubArray(int startRow, int endRow) {
@@ -1664,7 +4020,7 @@ private static float[][] coerceByGuessingTF3D(float[][][] m3) {
 
         for (int i = 0; i < numRows; i++) {
             for (int j = 0; j < numCols; j++) {
-                subArray[0][i][j][0] = melspectrogramBuffer.get(startRow + i)[j];
+                subArray[0][i][j][0] = melspectrogramBuffer.get(startRow + i, j);
             }
         }
         return subArray;
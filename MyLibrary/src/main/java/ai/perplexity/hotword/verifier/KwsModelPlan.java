@@ -0,0 +1,217 @@
+package ai.perplexity.hotword.verifier;
+
+import android.util.Log;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+import ai.onnxruntime.NodeInfo;
+import ai.onnxruntime.OnnxTensor;
+import ai.onnxruntime.OrtEnvironment;
+import ai.onnxruntime.OrtException;
+import ai.onnxruntime.OrtSession;
+import ai.onnxruntime.TensorInfo;
+
+// Single-window inference plan for one KWS session, resolved once when the session is created.
+// Caches the input name / rank / T / F, and owns a direct FloatBuffer-backed input tensor plus the
+// input map, so a steady-state score() only copies the mel window into native memory and runs.
+// When the output shape is fully static the output is pinned into a direct buffer as well.
+//
+// Pad/trim policy (same as the v2 path always used): keep the last T_model frames, or zero-pad
+// at the front. Not thread-safe per instance; score() is synchronized.
+final class KwsModelPlan implements AutoCloseable {
+    private static final String TAG = "KwsModelPlan";
+
+    final OrtSession session;
+    final String inputName;
+    final int rank;    // 3: (B,T,F)  4: (B,1,T,F)  0: unsupported
+    final int bModel;  // fixed batch dim, or -1 if dynamic
+    final int tModel;  // fixed T, or -1 if dynamic
+    final int fModel;  // fixed F, or -1 if dynamic
+
+    private final OrtEnvironment env;
+    private final Map<String, OnnxTensor> inputs = new HashMap<>(2);
+
+    // input tensor for the current (T,F); rebuilt only if a dynamic dim changes
+    private int curT = -1;
+    private int curF = -1;
+    private FloatBuffer inputBuffer;
+    private OnnxTensor inputTensor;
+
+    // pinned output (static output shape only)
+    private String outputName;
+    private FloatBuffer outputBuffer;
+    private OnnxTensor outputTensor;
+    private Map<String, OnnxTensor> pinnedOutputs;
+    private float[] logits;
+
+    private KwsModelPlan(OrtEnvironment env, OrtSession session, String inputName, long[] inShape) {
+        this.env = env;
+        this.session = session;
+        this.inputName = inputName;
+        int r = (inShape != null) ? inShape.length : 0;
+        if (r == 4 && inShape[1] > 1) {
+            Log.e(TAG, "unexpected channel dim (shape[1]=" + inShape[1] + ")");
+            r = 0;
+        }
+        this.rank = (r == 3 || r == 4) ? r : 0;
+        this.bModel = (rank > 0 && inShape[0] > 0) ? (int) inShape[0] : -1;
+        this.tModel = (rank > 0 && inShape[rank - 2] > 0) ? (int) inShape[rank - 2] : -1;
+        this.fModel = (rank > 0 && inShape[rank - 1] > 0) ? (int) inShape[rank - 1] : -1;
+    }
+
+    static KwsModelPlan create(OrtEnvironment env, OrtSession session, String inputName) throws OrtException {
+        NodeInfo inInfo = session.getInputInfo().get(inputName);
+        long[] inShape = ((TensorInfo) inInfo.getInfo()).getShape();
+        KwsModelPlan plan = new KwsModelPlan(env, session, inputName, inShape);
+        if (plan.rank == 0) {
+            Log.e(TAG, "unsupported input shape " + java.util.Arrays.toString(inShape));
+            return plan;
+        }
+        if (plan.tModel > 0 && plan.fModel > 0) {
+            plan.allocateInput(plan.tModel, plan.fModel);
+        }
+        plan.pinOutputIfStatic();
+        return plan;
+    }
+
+    // prob(positive) for one row-major [T,F] window
+    synchronized float score(float[] melFlat, int T, int F) throws OrtException {
+        if (!prepare(T, F)) return 0.0f;
+        inputBuffer.clear();
+        if (T >= curT) {
+            inputBuffer.put(melFlat, (T - curT) * F, curT * F);
+        } else {
+            zeroFrames(curT - T);
+            inputBuffer.put(melFlat, 0, T * F);
+        }
+        return run();
+    }
+
+    // prob(positive) for one [T][F] window, copied row by row (no intermediate flatten)
+    synchronized float score(float[][] mel) throws OrtException {
+        int T = mel.length;
+        int F = mel[0].length;
+        if (!prepare(T, F)) return 0.0f;
+        inputBuffer.clear();
+        int start = Math.max(0, T - curT);
+        if (T < curT) zeroFrames(curT - T);
+        for (int t = start; t < T; t++) {
+            inputBuffer.put(mel[t], 0, F);
+        }
+        return run();
+    }
+
+    private boolean prepare(int T, int F) throws OrtException {
+        if (rank == 0) return false;
+        if (fModel > 0 && fModel != F) {
+            Log.e(TAG, "mel F mismatch (model F=" + fModel + ", got " + F + ")");
+            return false;
+        }
+        int targetT = (tModel > 0) ? tModel : T;
+        if (inputTensor == null || targetT != curT || F != curF) {
+            allocateInput(targetT, F);
+        }
+        return true;
+    }
+
+    private void zeroFrames(int frames) {
+        for (int i = 0, n = frames * curF; i < n; i++) {
+            inputBuffer.put(0.0f);
+        }
+    }
+
+    private float run() throws OrtException {
+        if (pinnedOutputs != null) {
+            try (OrtSession.Result ignored = session.run(inputs, pinnedOutputs)) {
+                outputBuffer.rewind();
+                outputBuffer.get(logits);
+                return KeyWordsDetection.softmaxPositive(logits);
+            } catch (OrtException | LinkageError e) {
+                // older runtime or the model disagrees with its declared output shape
+                Log.w(TAG, "pinned output run failed, using allocated outputs: " + e.getMessage());
+                releaseOutput();
+            }
+        }
+        try (OrtSession.Result result = session.run(inputs)) {
+            Object out = result.get(0).getValue();
+            if (out instanceof float[][]) {
+                float[][] logits2D = (float[][]) out;
+                if (logits2D.length == 0 || logits2D[0] == null || logits2D[0].length == 0) {
+                    return 0.0f;
+                }
+                return KeyWordsDetection.softmaxPositive(logits2D[0]);
+            } else if (out instanceof float[]) {
+                return KeyWordsDetection.softmaxPositive((float[]) out);
+            }
+            Log.w(TAG, "unexpected output type " + out.getClass());
+            return 0.0f;
+        }
+    }
+
+    private void allocateInput(int T, int F) throws OrtException {
+        releaseInput();
+        inputBuffer = ByteBuffer.allocateDirect(T * F * 4).order(ByteOrder.nativeOrder()).asFloatBuffer();
+        long[] shape = (rank == 3) ? new long[]{1, T, F} : new long[]{1, 1, T, F};
+        inputTensor = OnnxTensor.createTensor(env, inputBuffer, shape);
+        inputs.put(inputName, inputTensor);
+        curT = T;
+        curF = F;
+    }
+
+    private void pinOutputIfStatic() {
+        try {
+            if (bModel > 1) return; // fixed batch > 1 means padding windows; score() is single-window
+            Map<String, NodeInfo> outInfo = session.getOutputInfo();
+            if (outInfo.size() != 1) return;
+            Map.Entry<String, NodeInfo> entry = outInfo.entrySet().iterator().next();
+            if (!(entry.getValue().getInfo() instanceof TensorInfo)) return;
+            long[] outShape = ((TensorInfo) entry.getValue().getInfo()).getShape();
+            int len = 1;
+            for (int d = 0; d < outShape.length; d++) {
+                // a dynamic leading batch dim is 1 here; any other dynamic dim -> no pinning
+                long dim = (outShape[d] < 0 && d == 0) ? 1 : outShape[d];
+                if (dim <= 0) return;
+                outShape[d] = dim;
+                len *= (int) dim;
+            }
+            if (len < 1 || len > 2) return; // prob or 2-class logits; anything else is read generically
+            outputName = entry.getKey();
+            outputBuffer = ByteBuffer.allocateDirect(len * 4).order(ByteOrder.nativeOrder()).asFloatBuffer();
+            outputTensor = OnnxTensor.createTensor(env, outputBuffer, outShape);
+            pinnedOutputs = new HashMap<>(2);
+            pinnedOutputs.put(outputName, outputTensor);
+            logits = new float[len];
+        } catch (Exception e) {
+            Log.w(TAG, "could not pin output: " + e.getMessage());
+            releaseOutput();
+        }
+    }
+
+    private void releaseInput() {
+        inputs.clear();
+        if (inputTensor != null) inputTensor.close();
+        inputTensor = null;
+        inputBuffer = null;
+        curT = -1;
+        curF = -1;
+    }
+
+    private void releaseOutput() {
+        pinnedOutputs = null;
+        if (outputTensor != null) outputTensor.close();
+        outputTensor = null;
+        outputBuffer = null;
+        logits = null;
+    }
+
+    // Releases the native tensors; the session itself is owned (and closed) by KeyWordsDetection.
+    @Override
+    public synchronized void close() {
+        releaseInput();
+        releaseOutput();
+    }
+}
@@ -0,0 +1,242 @@
+package ai.perplexity.hotword.verifier;
+
+import java.util.Arrays;
+
+// Pure-Java log-mel frontend (framed STFT + mel filterbank + log) that can stand in for
+// melspectrogram.onnx. forKwsModels() builds the recipe that graph was exported from
+// (torchlibrosa: n_fft 512, 400-sample Hann window, hop 160, power 2, 32 Slaney mels over
+// 60..3800 Hz, dB); KeyWordsDetection still compares it against the ONNX output before use.
+//
+// Framing matches the ONNX model (no centering): frame k covers samples [k*hop, k*hop + frameSpan).
+final class LogMelFrontend {
+    static final int FB_HZ_TRIANGLES  = 0; // torchaudio melscale_fbanks (htk, norm=None)
+    static final int FB_MEL_TRIANGLES = 1; // tf.signal.linear_to_mel_weight_matrix (DC bin zeroed)
+    static final int FB_SLANEY        = 2; // librosa.filters.mel (Slaney mel scale, norm='slaney')
+    static final int LOG_DB = 0;           // 10 * log10(max(x, 1e-10))
+    static final int LOG_LN = 1;           // ln(x + 1e-6)
+
+    private static final double SLANEY_LOG_STEP = Math.log(6.4) / 27.0; // per mel above 1 kHz
+
+    final int frameSpan;
+    final int winLength;
+    final int hop;
+    final int nMels;
+    final int fbStyle;
+    final int logStyle;
+    final float power;
+    final float inputScale;
+
+    private final int fftSize;
+    private final int nBins;
+    private final double[] window;     // frameSpan long, zero outside the centered win
+    private final int[] melFirstBin;
+    private final double[][] melWeights;
+    private final int[] rev;
+    private final double[] cosTab;
+    private final double[] sinTab;
+
+    // streaming scratch (appendStreaming runs on one thread)
+    private final double[] re;
+    private final double[] im;
+    private final double[] spec;
+    private final float[] row;
+
+    LogMelFrontend(int sampleRate, int frameSpan, int winLength, int hop, int nMels,
+                   float fMin, float fMax, int fbStyle, float power, int logStyle, float inputScale) {
+        this.frameSpan = frameSpan;
+        this.winLength = Math.min(winLength, frameSpan);
+        this.hop = hop;
+        this.nMels = nMels;
+        this.fbStyle = fbStyle;
+        this.logStyle = logStyle;
+        this.power = power;
+        this.inputScale = inputScale;
+
+        int n = 1;
+        while (n < frameSpan) n <<= 1;
+        fftSize = n;
+        nBins = fftSize / 2 + 1;
+
+        // periodic Hann over winLength, centered in the frame (torch.stft convention)
+        window = new double[frameSpan];
+        int winOff = (frameSpan - this.winLength) / 2;
+        for (int i = 0; i < this.winLength; i++) {
+            window[winOff + i] = 0.5 - 0.5 * Math.cos(2.0 * Math.PI * i / this.winLength);
+        }
+
+        rev = new int[fftSize];
+        int bits = Integer.numberOfTrailingZeros(fftSize);
+        for (int i = 0; i < fftSize; i++) {
+            rev[i] = Integer.reverse(i) >>> (32 - bits);
+        }
+        cosTab = new double[fftSize / 2];
+        sinTab = new double[fftSize / 2];
+        for (int i = 0; i < fftSize / 2; i++) {
+            cosTab[i] = Math.cos(2.0 * Math.PI * i / fftSize);
+            sinTab[i] = Math.sin(2.0 * Math.PI * i / fftSize);
+        }
+
+        melFirstBin = new int[nMels];
+        melWeights = new double[nMels][];
+        buildFilterbank(sampleRate, fMin, fMax);
+
+        re = new double[fftSize];
+        im = new double[fftSize];
+        spec = new double[nBins];
+        row = new float[nMels];
+    }
+
+    int framesFor(int numSamples) {
+        return numSamples < frameSpan ? 0 : 1 + (numSamples - frameSpan) / hop;
+    }
+
+    String describe() {
+        String fb = (fbStyle == FB_SLANEY) ? "slaney" : (fbStyle == FB_HZ_TRIANGLES ? "hz" : "mel");
+        return "span=" + frameSpan + " win=" + winLength + " fft=" + fftSize + " hop=" + hop +
+                " mels=" + nMels + " fb=" + fb +
+                " power=" + power + " log=" + (logStyle == LOG_DB ? "dB" : "ln") + " scale=" + inputScale;
+    }
+
+    // Whole-buffer melspec [T, nMels] over audio[off .. off+len). Uses local scratch, so it is
+    // safe to call from several threads at once (unlike appendStreaming).
+    float[][] compute(float[] audio, int off, int len) {
+        int frames = framesFor(len);
+        float[][] out = new float[frames][nMels];
+        double[] lre = new double[fftSize];
+        double[] lim = new double[fftSize];
+        double[] lspec = new double[nBins];
+        for (int t = 0; t < frames; t++) {
+            computeFrame(audio, off + t * hop, out[t], lre, lim, lspec);
+        }
+        return out;
+    }
+
+    // Streaming: the frames of window[0 .. len) - the same frames melspec.onnx would return for
+    // that window - appended to `out` as x / div + bias. The streaming window (hop + 3 mel hops)
+    // yields exactly the frames that start in the new hop, so nothing is computed twice.
+    int appendStreaming(float[] window, int len, MelFrameRing out, float div, float bias) {
+        int frames = framesFor(len);
+        for (int t = 0; t < frames; t++) {
+            computeFrame(window, t * hop, row, re, im, spec);
+            for (int m = 0; m < nMels; m++) {
+                row[m] = row[m] / div + bias;
+            }
+            out.append(row);
+        }
+        return frames;
+    }
+
+    private void computeFrame(float[] audio, int off, float[] out, double[] re, double[] im, double[] spec) {
+        for (int i = 0; i < fftSize; i++) {
+            re[i] = (i < frameSpan) ? audio[off + i] * inputScale * window[i] : 0.0;
+            im[i] = 0.0;
+        }
+        fft(re, im);
+        for (int b = 0; b < nBins; b++) {
+            double p = re[b] * re[b] + im[b] * im[b];
+            spec[b] = (power == 2.0f) ? p : Math.pow(p, power / 2.0);
+        }
+        for (int m = 0; m < nMels; m++) {
+            double[] w = melWeights[m];
+            int b0 = melFirstBin[m];
+            double acc = 0.0;
+            for (int k = 0; k < w.length; k++) {
+                acc += w[k] * spec[b0 + k];
+            }
+            out[m] = (float) (logStyle == LOG_DB
+                    ? 10.0 * Math.log10(Math.max(acc, 1e-10))
+                    : Math.log(acc + 1e-6));
+        }
+    }
+
+    // in-place iterative radix-2 FFT
+    private void fft(double[] re, double[] im) {
+        int n = fftSize;
+        for (int i = 0; i < n; i++) {
+            int j = rev[i];
+            if (j > i) {
+                double tr = re[i]; re[i] = re[j]; re[j] = tr;
+                double ti = im[i]; im[i] = im[j]; im[j] = ti;
+            }
+        }
+        for (int size = 2; size <= n; size <<= 1) {
+            int half = size >> 1;
+            int step = n / size;
+            for (int i = 0; i < n; i += size) {
+                for (int k = 0; k < half; k++) {
+                    double c = cosTab[k * step];
+                    double s = -sinTab[k * step];
+                    int a = i + k;
+                    int b = a + half;
+                    double xr = re[b] * c - im[b] * s;
+                    double xi = re[b] * s + im[b] * c;
+                    re[b] = re[a] - xr;
+                    im[b] = im[a] - xi;
+                    re[a] += xr;
+                    im[a] += xi;
+                }
+            }
+        }
+    }
+
+    private void buildFilterbank(int sampleRate, float fMin, float fMax) {
+        double[] binHz = new double[nBins];
+        for (int b = 0; b < nBins; b++) {
+            binHz[b] = b * (sampleRate / 2.0) / (nBins - 1);
+        }
+        double mMin = hzToMel(fMin);
+        double mMax = hzToMel(fMax);
+        boolean inHz = fbStyle != FB_MEL_TRIANGLES;
+        double[] edges = new double[nMels + 2]; // in Hz, except in mel for FB_MEL_TRIANGLES
+        for (int i = 0; i < nMels + 2; i++) {
+            double mel = mMin + (mMax - mMin) * i / (nMels + 1);
+            edges[i] = inHz ? melToHz(mel) : mel;
+        }
+
+        for (int m = 0; m < nMels; m++) {
+            double lo = edges[m], mid = edges[m + 1], hi = edges[m + 2];
+            double area = (fbStyle == FB_SLANEY) ? 2.0 / (hi - lo) : 1.0; // slaney: equal area
+            double[] w = new double[nBins];
+            int first = -1, last = -1;
+            for (int b = 0; b < nBins; b++) {
+                if (fbStyle == FB_MEL_TRIANGLES && b == 0) continue; // tf zeroes the DC band
+                double x = inHz ? binHz[b] : hzToMel(binHz[b]);
+                double v = Math.max(0.0, Math.min((x - lo) / (mid - lo), (hi - x) / (hi - mid)));
+                if (v > 0.0) {
+                    w[b] = v * area;
+                    if (first < 0) first = b;
+                    last = b;
+                }
+            }
+            if (first < 0) {
+                melFirstBin[m] = 0;
+                melWeights[m] = new double[0];
+            } else {
+                melFirstBin[m] = first;
+                melWeights[m] = Arrays.copyOfRange(w, first, last + 1);
+            }
+        }
+    }
+
+    // Slaney scale (librosa htk=False): linear below 1 kHz, logarithmic above. htk mel otherwise;
+    // tf uses 1127*ln(1+f/700), which is the same scale up to a constant factor.
+    private double hzToMel(double hz) {
+        if (fbStyle == FB_SLANEY) {
+            return hz < 1000.0 ? hz / (200.0 / 3.0) : 15.0 + Math.log(hz / 1000.0) / SLANEY_LOG_STEP;
+        }
+        return 2595.0 * Math.log10(1.0 + hz / 700.0);
+    }
+
+    private double melToHz(double mel) {
+        if (fbStyle == FB_SLANEY) {
+            return mel < 15.0 ? mel * (200.0 / 3.0) : 1000.0 * Math.exp(SLANEY_LOG_STEP * (mel - 15.0));
+        }
+        return 700.0 * (Math.pow(10.0, mel / 2595.0) - 1.0);
+    }
+
+    // The frontend melspectrogram.onnx was exported from, for 16 kHz input in [-1, 1).
+    static LogMelFrontend forKwsModels() {
+        return new LogMelFrontend(16000, 512, 400, 160, 32, 60.0f, 3800.0f,
+                FB_SLANEY, 2.0f, LOG_DB, 1.0f);
+    }
+}
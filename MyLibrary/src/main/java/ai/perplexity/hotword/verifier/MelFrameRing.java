@@ -0,0 +1,98 @@
+package ai.perplexity.hotword.verifier;
+
+// Circular store of mel frames in one flat float[] (row-major, `bins` floats per frame).
+// Appending is O(1) per frame and overwrites the oldest frame once full, replacing the
+// ArrayList<float[]> + remove(0) trimming. Frame index 0 is always the oldest frame.
+final class MelFrameRing {
+    private final int maxFrames;
+    private int bins;
+    private float[] data;
+    private int head = 0; // slot of the oldest frame
+    private int size = 0;
+
+    MelFrameRing(int maxFrames, int bins) {
+        if (maxFrames <= 0 || bins <= 0) {
+            throw new IllegalArgumentException("maxFrames and bins must be > 0");
+        }
+        this.maxFrames = maxFrames;
+        this.bins = bins;
+        this.data = new float[maxFrames * bins];
+    }
+
+    int size() {
+        return size;
+    }
+
+    int bins() {
+        return bins;
+    }
+
+    void clear() {
+        head = 0;
+        size = 0;
+    }
+
+    void append(float[] row) {
+        if (row.length != bins) {
+            // model emits a different mel width: start over with the new layout
+            bins = row.length;
+            data = new float[maxFrames * bins];
+            clear();
+        }
+        int slot = (head + size) % maxFrames;
+        System.arraycopy(row, 0, data, slot * bins, bins);
+        if (size < maxFrames) {
+            size++;
+        } else {
+            head = (head + 1) % maxFrames;
+        }
+    }
+
+    void append(float[][] rows) {
+        for (float[] row : rows) {
+            append(row);
+        }
+    }
+
+    // Append `count` frames with every bin set to `value` (used to prime the buffer).
+    void fill(int count, float value) {
+        for (int n = 0; n < count; n++) {
+            int slot = (head + size) % maxFrames;
+            java.util.Arrays.fill(data, slot * bins, (slot + 1) * bins, value);
+            if (size < maxFrames) {
+                size++;
+            } else {
+                head = (head + 1) % maxFrames;
+            }
+        }
+    }
+
+    float get(int frame, int bin) {
+        return data[((head + frame) % maxFrames) * bins + bin];
+    }
+
+    // Copy frames [from, from+count) (oldest = 0) row-major into dst[dstOff..].
+    void copyFrames(int from, int count, float[] dst, int dstOff) {
+        int slot = (head + from) % maxFrames;
+        int first = Math.min(count, maxFrames - slot);
+        System.arraycopy(data, slot * bins, dst, dstOff, first * bins);
+        if (count > first) {
+            System.arraycopy(data, 0, dst, dstOff + first * bins, (count - first) * bins);
+        }
+    }
+
+    // Copy the newest `count` frames row-major into dst[dstOff..] (model-ready [T,F] layout).
+    void copyLast(int count, float[] dst, int dstOff) {
+        copyFrames(size - count, count, dst, dstOff);
+    }
+
+    // Newest `count` frames as [T,F] rows (allocates; for windows that have to be kept).
+    float[][] lastRows(int count) {
+        float[][] rows = new float[count][bins];
+        for (int t = 0; t < count; t++) {
+            int slot = (head + size - count + t) % maxFrames;
+            System.arraycopy(data, slot * bins, rows[t], 0, bins);
+        }
+        return rows;
+    }
+}
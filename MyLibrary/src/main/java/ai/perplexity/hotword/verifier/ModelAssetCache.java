@@ -0,0 +1,167 @@
+package ai.perplexity.hotword.verifier;
+
+import android.content.Context;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.content.res.AssetFileDescriptor;
+import android.os.Build;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Extraction cache for model / library assets that have to exist as files (ONNX Runtime loads
+// models and external .onnx.data by path). An asset is copied to <filesDir>/<name> once; next to
+// it, <name>.stamp records the key it was extracted under: asset name, APK version code and last
+// update time (assets can only change with the APK) and the asset length when it is known
+// without reading it. A later request with the same key and an intact file is a no-op.
+//
+// Copies stream through a 64 KB buffer into a temp file that is renamed into place, so a
+// concurrent reader sees either the old complete file or the new one, never a partial copy.
+// Extractions of the same target within the process are serialized.
+final class ModelAssetCache {
+    private static final String TAG = "ModelAssetCache";
+    private static final int COPY_BUFFER = 64 * 1024;
+    private static final String STAMP_SUFFIX = ".stamp";
+
+    private static final ConcurrentHashMap<String, Object> locks = new ConcurrentHashMap<>();
+
+    private ModelAssetCache() {
+    }
+
+    // Model asset plus its "<name>.data" external-data sidecar when the asset has one (ORT picks
+    // it up next to the .onnx). Returns the model path, or null if the model could not be extracted.
+    static String extractModel(Context context, String assetName) {
+        String path = extract(context, assetName, assetName);
+        if (path == null || !assetName.endsWith(".onnx")) return path;
+        String dataAssetName = assetName + ".data";
+        if (assetExists(context, dataAssetName) && extract(context, dataAssetName, dataAssetName) == null) {
+            // the main .onnx is present; models without external data still load
+            Log.e(TAG, "Failed to extract ONNX .data asset: " + dataAssetName);
+        }
+        return path;
+    }
+
+    // assetPath extracted to <filesDir>/<outputName>; absolute path, or null on failure.
+    static String extract(Context context, String assetPath, String outputName) {
+        File file = new File(context.getFilesDir(), outputName);
+        Object lock = locks.computeIfAbsent(file.getAbsolutePath(), k -> new Object());
+        synchronized (lock) {
+            String key = cacheKey(context, assetPath);
+            if (isValid(file, key)) {
+                return file.getAbsolutePath();
+            }
+            File parent = file.getParentFile();
+            if (parent != null && !parent.exists() && !parent.mkdirs() && !parent.exists()) {
+                Log.e(TAG, "Cannot create " + parent.getAbsolutePath());
+                return null;
+            }
+            long t0 = System.nanoTime();
+            try {
+                long length = copyAtomically(context, assetPath, file);
+                writeStamp(file, key + "|" + length);
+                Log.d(TAG, "Extracted " + assetPath + " (" + length + " bytes) in " +
+                        (System.nanoTime() - t0) / 1_000_000L + " ms");
+                return file.getAbsolutePath();
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to copy asset file: " + assetPath, e);
+                return null;
+            }
+        }
+    }
+
+    static boolean assetExists(Context context, String assetName) {
+        try (InputStream ignored = context.getAssets().open(assetName)) {
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static boolean isValid(File file, String key) {
+        if (!file.isFile()) return false;
+        String stamp = readStamp(file);
+        return stamp != null && stamp.equals(key + "|" + file.length());
+    }
+
+    private static String cacheKey(Context context, String assetPath) {
+        long version = -1;
+        long updated = -1;
+        try {
+            PackageInfo pi = context.getPackageManager().getPackageInfo(context.getPackageName(), 0);
+            version = (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) ? pi.getLongVersionCode() : pi.versionCode;
+            updated = pi.lastUpdateTime;
+        } catch (PackageManager.NameNotFoundException | RuntimeException e) {
+            Log.w(TAG, "No package info, keying " + assetPath + " by length only: " + e);
+        }
+        return assetPath + "|" + version + "|" + updated + "|" + assetLength(context, assetPath);
+    }
+
+    // Length of an uncompressed asset without reading it; -1 for compressed assets.
+    private static long assetLength(Context context, String assetPath) {
+        try (AssetFileDescriptor afd = context.getAssets().openFd(assetPath)) {
+            return afd.getLength();
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    private static long copyAtomically(Context context, String assetPath, File target) throws IOException {
+        File tmp = new File(target.getPath() + ".tmp-" + Thread.currentThread().getId() + "-" + System.nanoTime());
+        long total = 0;
+        try {
+            try (InputStream in = context.getAssets().open(assetPath);
+                 FileOutputStream out = new FileOutputStream(tmp)) {
+                byte[] buffer = new byte[COPY_BUFFER];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, read);
+                    total += read;
+                }
+                out.getFD().sync();
+            }
+            // the stamp goes stale before the file is replaced: a crash in between forces a recopy
+            new File(target.getPath() + STAMP_SUFFIX).delete();
+            if (!tmp.renameTo(target)) {
+                throw new IOException("rename " + tmp + " -> " + target + " failed");
+            }
+            return total;
+        } finally {
+            if (tmp.exists()) tmp.delete();
+        }
+    }
+
+    private static String readStamp(File file) {
+        File stamp = new File(file.getPath() + STAMP_SUFFIX);
+        if (!stamp.isFile() || stamp.length() > 4096) return null;
+        byte[] buf = new byte[(int) stamp.length()];
+        try (FileInputStream in = new FileInputStream(stamp)) {
+            int off = 0;
+            while (off < buf.length) {
+                int n = in.read(buf, off, buf.length - off);
+                if (n < 0) return null;
+                off += n;
+            }
+            return new String(buf, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static void writeStamp(File file, String value) throws IOException {
+        File stamp = new File(file.getPath() + STAMP_SUFFIX);
+        File tmp = new File(stamp.getPath() + ".tmp-" + Thread.currentThread().getId());
+        try (FileOutputStream out = new FileOutputStream(tmp)) {
+            out.write(value.getBytes(StandardCharsets.UTF_8));
+        }
+        if (!tmp.renameTo(stamp)) {
+            tmp.delete();
+            throw new IOException("rename " + tmp + " -> " + stamp + " failed");
+        }
+    }
+}
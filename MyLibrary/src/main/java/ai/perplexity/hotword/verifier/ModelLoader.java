@@ -0,0 +1,233 @@
+package ai.perplexity.hotword.verifier;
+
+import android.content.Context;
+import android.content.pm.PackageInfo;
+import android.content.res.AssetFileDescriptor;
+import android.os.Build;
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import ai.onnxruntime.OrtEnvironment;
+import ai.onnxruntime.OrtException;
+import ai.onnxruntime.OrtSession;
+
+// Creates ORT sessions for a model "source": an absolute file path, or an asset name.
+//
+// Assets are loaded from memory - no file is written: an uncompressed asset is memory-mapped
+// straight out of the APK (openFd), a compressed one is read into a byte[]. ORT parses the model
+// during session creation, so the buffer is not needed afterwards. Models with external data
+// (<name>.onnx.data) need a path to resolve it, so those assets go through the extraction cache
+// and are opened by path. Files are mapped and loaded the same way when they have no .data.
+//
+// Optimized model cache (optional): on the first load of a model a CPU-only session optimizes it
+// (EXTENDED level, no EPs, so the graph is serializable and EP-neutral) and ORT writes the result
+// into a directory versioned by APK version/update time and device build. Every session, then
+// and on later starts, is created from that graph with the caller's options minus the graph
+// optimization passes; EPs such as XNNPACK still partition and compile it as usual. A cache
+// entry that fails to load is deleted and the model is optimized again.
+final class ModelLoader {
+    private static final String TAG = "ModelLoader";
+
+    // Session options for one model load; preOptimized: the graph comes from the cache and only
+    // needs EP partitioning (the factory typically turns graph optimization off).
+    interface OptionsFactory {
+        OrtSession.SessionOptions create(boolean preOptimized) throws OrtException;
+    }
+
+    private static volatile File optimizedCacheRoot = null; // null: cache off
+
+    private ModelLoader() {
+    }
+
+    // Cache optimized graphs under root/<version key>/ (null: off). Stale version dirs are removed.
+    static void setOptimizedCacheRoot(Context context, File root) {
+        if (root == null) {
+            optimizedCacheRoot = null;
+            return;
+        }
+        File dir = new File(root, versionKey(context));
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            Log.w(TAG, "cannot create optimized model cache " + dir);
+            optimizedCacheRoot = null;
+            return;
+        }
+        File[] old = root.listFiles();
+        if (old != null) {
+            for (File f : old) {
+                if (!f.equals(dir)) deleteTree(f);
+            }
+        }
+        optimizedCacheRoot = dir;
+    }
+
+    // Session for source through the optimized model cache (plain load when it is off).
+    // report gets "source=N ms (how)".
+    static OrtSession createCachedSession(OrtEnvironment env, Context context, String source,
+                                          OptionsFactory factory, StringBuilder report) throws OrtException {
+        long t0 = System.nanoTime();
+        File dir = optimizedCacheRoot;
+        String how;
+        OrtSession session;
+        if (dir == null) {
+            session = createSession(env, context, source, factory.create(false));
+            how = "uncached";
+        } else {
+            File cached = new File(dir, cacheName(source));
+            File notCacheable = new File(cached.getPath() + ".nocache");
+            session = null;
+            how = "cache hit";
+            if (notCacheable.exists()) {
+                session = createSession(env, context, source, factory.create(false));
+                how = "not cacheable";
+            } else if (cached.isFile() && cached.length() > 0) {
+                try {
+                    session = env.createSession(cached.getAbsolutePath(), factory.create(true));
+                } catch (OrtException e) {
+                    Log.w(TAG, "optimized cache entry for " + source + " unusable, rebuilding: " + e.getMessage());
+                    cached.delete();
+                }
+            }
+            if (session == null) {
+                how = "cache miss";
+                File tmp = null;
+                try {
+                    // unique per writer: detectors starting at the same time each write their own
+                    tmp = File.createTempFile(cached.getName(), ".tmp", dir);
+                    optimizeToFile(env, context, source, tmp);
+                    if (tmp.length() > 0 && tmp.renameTo(cached)) {
+                        session = env.createSession(cached.getAbsolutePath(), factory.create(true));
+                        how = "cache miss, stored";
+                    }
+                } catch (IOException | OrtException e) {
+                    Log.i(TAG, "cannot cache optimized " + source + " (" + e.getMessage() + "), loading uncached");
+                    try {
+                        notCacheable.createNewFile(); // do not pay for the failed attempt on every start
+                    } catch (IOException ignored) {
+                    }
+                    how = "not cacheable";
+                } finally {
+                    if (tmp != null) tmp.delete();
+                }
+                if (session == null) {
+                    session = createSession(env, context, source, factory.create(false));
+                }
+            }
+        }
+        if (report != null) {
+            if (report.length() > 0) report.append(", ");
+            report.append(source).append('=').append((System.nanoTime() - t0) / 1_000_000L)
+                  .append(" ms (").append(how).append(')');
+        }
+        return session;
+    }
+
+    static OrtSession createSession(OrtEnvironment env, Context context, String source,
+                                    OrtSession.SessionOptions options) throws OrtException {
+        long t0 = System.nanoTime();
+        File file = new File(source);
+        try {
+            if (file.isAbsolute()) {
+                if (new File(source + ".data").exists()) {
+                    return env.createSession(source, options);
+                }
+                try (FileInputStream in = new FileInputStream(file);
+                     FileChannel ch = in.getChannel()) {
+                    return env.createSession(ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size()), options);
+                } catch (IOException e) {
+                    Log.w(TAG, "mapping " + source + " failed, loading by path: " + e.getMessage());
+                    return env.createSession(source, options);
+                }
+            }
+
+            if (source.endsWith(".onnx") && ModelAssetCache.assetExists(context, source + ".data")) {
+                String path = ModelAssetCache.extractModel(context, source);
+                if (path == null) throw new OrtException("Failed to extract model asset " + source);
+                return env.createSession(path, options);
+            }
+            MappedByteBuffer mapped = mapAsset(context, source);
+            if (mapped != null) {
+                return env.createSession(mapped, options);
+            }
+            return env.createSession(readAsset(context, source), options);
+        } catch (IOException e) {
+            throw new OrtException("Failed to read model " + source + ": " + e.getMessage());
+        } finally {
+            Log.d(TAG, "createSession(" + source + "): " + (System.nanoTime() - t0) / 1_000_000L + " ms");
+        }
+    }
+
+    // Optimize source on the CPU EP only and let ORT serialize the graph to out. The session is
+    // only a vehicle for the optimizers and is closed right away.
+    private static void optimizeToFile(OrtEnvironment env, Context context, String source, File out)
+            throws OrtException {
+        try (OrtSession.SessionOptions options = new OrtSession.SessionOptions()) {
+            // EXTENDED, not ALL: layout (NCHWc) rewrites are CPU-specific and would keep EPs off
+            options.setOptimizationLevel(OrtSession.SessionOptions.OptLevel.EXTENDED_OPT);
+            options.setOptimizedModelFilePath(out.getAbsolutePath());
+            createSession(env, context, source, options).close();
+        }
+    }
+
+    private static String cacheName(String source) {
+        String name = source.substring(source.lastIndexOf('/') + 1);
+        long id = source.hashCode();
+        File file = new File(source);
+        if (file.isAbsolute()) {
+            id = id * 31 + file.length();
+            id = id * 31 + file.lastModified();
+        }
+        return name + "." + Long.toHexString(id) + ".opt.onnx";
+    }
+
+    // Assets only change with the APK; optimized graphs also depend on the ORT build and device.
+    private static String versionKey(Context context) {
+        long version = -1;
+        long updated = -1;
+        try {
+            PackageInfo pi = context.getPackageManager().getPackageInfo(context.getPackageName(), 0);
+            version = (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) ? pi.getLongVersionCode() : pi.versionCode;
+            updated = pi.lastUpdateTime;
+        } catch (Exception e) {
+            Log.w(TAG, "no package info for the optimized model cache key: " + e);
+        }
+        return "v" + version + "-" + Long.toHexString(updated) + "-" + Integer.toHexString(Build.FINGERPRINT.hashCode());
+    }
+
+    private static void deleteTree(File f) {
+        File[] children = f.listFiles();
+        if (children != null) {
+            for (File c : children) deleteTree(c);
+        }
+        f.delete();
+    }
+
+    // Read-only mapping of an uncompressed asset inside the APK, or null if it is compressed.
+    private static MappedByteBuffer mapAsset(Context context, String assetName) {
+        try (AssetFileDescriptor afd = context.getAssets().openFd(assetName);
+             FileInputStream in = afd.createInputStream();
+             FileChannel ch = in.getChannel()) {
+            return ch.map(FileChannel.MapMode.READ_ONLY, afd.getStartOffset(), afd.getLength());
+        } catch (IOException e) {
+            return null; // compressed assets cannot be opened as a file descriptor
+        }
+    }
+
+    private static byte[] readAsset(Context context, String assetName) throws IOException {
+        try (InputStream in = context.getAssets().open(assetName)) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(in.available(), 64 * 1024));
+            byte[] buffer = new byte[64 * 1024];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package ai.perplexity.hotword.verifier;
+
+// Deterministic non-silent audio for the detector's self-checks (bulk melspec parity, silence
+// cache, Java melspec calibration) and the instrumented tests: LCG noise, optionally over a tone.
+// The same seed always gives the same samples, so a check that fails once fails every time.
+final class ProbeSignal {
+    private ProbeSignal() {
+    }
+
+    // `length` samples of noise in (-amplitude, amplitude).
+    static short[] noise(int length, int seed, int amplitude) {
+        short[] pcm = new short[length];
+        addNoise(pcm, 0, length, seed, amplitude);
+        return pcm;
+    }
+
+    // Noise over a sine tone of radPerSample (e.g. 0.03 rad = 76 Hz at 16 kHz).
+    static short[] noiseOverTone(int length, int seed, int noiseAmplitude, int toneAmplitude, double radPerSample) {
+        short[] pcm = noise(length, seed, noiseAmplitude);
+        for (int i = 0; i < length; i++) {
+            pcm[i] = clamp(pcm[i] + toneAmplitude * Math.sin(i * radPerSample));
+        }
+        return pcm;
+    }
+
+    // Adds noise in (-amplitude, amplitude) to pcm[from .. to).
+    static void addNoise(short[] pcm, int from, int to, int seed, int amplitude) {
+        for (int i = from; i < to; i++) {
+            seed = seed * 1103515245 + 12345;
+            pcm[i] = clamp(pcm[i] + (seed >> 16) % amplitude);
+        }
+    }
+
+    private static short clamp(double v) {
+        return (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, v));
+    }
+}
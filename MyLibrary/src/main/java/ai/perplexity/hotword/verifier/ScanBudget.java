@@ -0,0 +1,48 @@
+package ai.perplexity.hotword.verifier;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Time / cancellation budget of one v2 bulk scan. The scan loops poll exhausted() once per window
+// (or block of windows); a poll is a flag read plus System.nanoTime(), negligible next to a
+// melspec + KWS run. Once exhausted it stays exhausted, so every shard stops at its next window.
+final class ScanBudget {
+    private final long deadlineNanos;   // System.nanoTime() based
+    private final boolean hasDeadline;
+    private final AtomicBoolean cancel; // may be null
+
+    private volatile boolean stopped = false;
+    private volatile boolean timedOut = false;
+    private volatile boolean cancelled = false;
+
+    // timeoutMs <= 0: no deadline
+    ScanBudget(long timeoutMs, AtomicBoolean cancel) {
+        this.hasDeadline = timeoutMs > 0;
+        this.deadlineNanos = System.nanoTime() + (hasDeadline ? timeoutMs * 1_000_000L : 0L);
+        this.cancel = cancel;
+    }
+
+    boolean exhausted() {
+        if (stopped) return true;
+        if (cancel != null && cancel.get()) {
+            cancelled = true;
+            stopped = true;
+        } else if (hasDeadline && System.nanoTime() - deadlineNanos > 0) {
+            timedOut = true;
+            stopped = true;
+        }
+        return stopped;
+    }
+
+    // True if a poll found the budget spent (work was left undone).
+    boolean stopped() {
+        return stopped;
+    }
+
+    boolean timedOut() {
+        return timedOut;
+    }
+
+    boolean cancelled() {
+        return cancelled;
+    }
+}
@@ -0,0 +1,71 @@
+package ai.perplexity.hotword.verifier;
+
+// Fixed-capacity ring of 16-bit PCM samples for the streaming path.
+// Writes overwrite the oldest samples once full; readLast() copies the newest
+// samples out in order into a caller-owned array, so steady state allocates nothing.
+final class ShortRingBuffer {
+    private final short[] data;
+    private int writePos = 0; // next slot to write
+    private int size = 0;
+
+    ShortRingBuffer(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be > 0");
+        }
+        data = new short[capacity];
+    }
+
+    int capacity() {
+        return data.length;
+    }
+
+    int size() {
+        return size;
+    }
+
+    void clear() {
+        writePos = 0;
+        size = 0;
+    }
+
+    void write(short[] src, int off, int len) {
+        int cap = data.length;
+        if (len >= cap) {
+            // only the newest `cap` samples survive
+            off += len - cap;
+            len = cap;
+        }
+        int first = Math.min(len, cap - writePos);
+        System.arraycopy(src, off, data, writePos, first);
+        if (len > first) {
+            System.arraycopy(src, off + first, data, 0, len - first);
+        }
+        writePos = (writePos + len) % cap;
+        size = Math.min(cap, size + len);
+    }
+
+    // Copy the newest min(n, size) samples, oldest first, into dst[dstOff..]. Returns the count copied.
+    int readLast(int n, short[] dst, int dstOff) {
+        n = Math.min(n, size);
+        int cap = data.length;
+        int start = (writePos - n + cap) % cap;
+        int first = Math.min(n, cap - start);
+        System.arraycopy(data, start, dst, dstOff, first);
+        if (n > first) {
+            System.arraycopy(data, 0, dst, dstOff + first, n - first);
+        }
+        return n;
+    }
+
+    // Same as readLast(int, short[], int), converting to float with `scale` on the way out.
+    int readLast(int n, float[] dst, int dstOff, float scale) {
+        n = Math.min(n, size);
+        int cap = data.length;
+        int src = (writePos - n + cap) % cap;
+        for (int i = 0; i < n; i++) {
+            dst[dstOff + i] = data[src] * scale;
+            if (++src == cap) src = 0;
+        }
+        return n;
+    }
+}
@@ -2,6 +2,8 @@ package ai.perplexity.hotword.verifier;
 
 import ai.onnxruntime.*;
 import android.content.Context;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
 import java.nio.LongBuffer;
 import java.util.*;
@@ -21,8 +23,8 @@ public class VADModelWrapper {
     private Context context;
     private int predict_call_times = 0;
    // private static final int BUFFER_SIZE = 40; // or any desired size
-    private float[] h;
-    private float[] c;
+    private static final int STATE_LEN = 2 * 1 * 64;
+    private static final float PCM_SCALE = 1.0f / 32767.0f;
     long[] c_tensorShape;
     long[] h_tensorShape;
     Deque<Float> framePredictions;
@@ -31,23 +33,28 @@ public class VADModelWrapper {
     List<String> inputNames;
     long[] srArray;
     long[] srShape;
-    float[] floatInput;
     long[] chunkShape;
 
+    // All tensors are created once over direct buffers and reused for every frame.
+    // The model's hn/cn outputs are copied back into hBuffer/cBuffer, which back hTensor/cTensor.
     private FloatBuffer inputBuffer;
     private FloatBuffer hBuffer;
     private FloatBuffer cBuffer;
     private LongBuffer srBuffer;
+    OnnxTensor inputTensor;
     OnnxTensor srTensor;
     OnnxTensor hTensor;
     OnnxTensor cTensor;
 
+    // pinned outputs (output, hn, cn); null if not supported by the runtime/model
+    private List<String> outputNames;
+    private Map<String, OnnxTensor> pinnedOutputs;
+    private FloatBuffer probBuffer;
+    private FloatBuffer hnBuffer;
+    private FloatBuffer cnBuffer;
+
     public VADModelWrapper(Context context, String modelPath) throws OrtException {
         Log.d(TAG, "VADModelWrapper constructor: ");
-        h = new float[128];
-        c = new float[128];
-        Arrays.fill(h, 0.0f); // Fill h with zeros
-        Arrays.fill(c, 0.0f); // Fill c with zeros
         c_tensorShape = new long[]{2, 1, 64};
         h_tensorShape = new long[]{2, 1, 64};
         framePredictions = new ArrayDeque<>();
@@ -56,8 +63,8 @@ public class VADModelWrapper {
         srArray = new long[]{16000};
         srShape = new long[]{1};
         chunkShape = new long[]{1, Constants.FRAME_LENGTH};
-        srBuffer = LongBuffer.wrap(new long[]{16000});
-        floatInput = new float[Constants.FRAME_LENGTH];
+        srBuffer = ByteBuffer.allocateDirect(8).order(ByteOrder.nativeOrder()).asLongBuffer();
+        srBuffer.put(srArray).flip();
 
         this.context = context;
         // Print debug to print all files in the bundle and all assets
@@ -79,79 +86,14 @@ public class VADModelWrapper {
         try {
             Log.d(TAG, "VADModelWrapper constructor: 1: " + modelPath);
             env = OrtEnvironment.getEnvironment();
-            OrtSession.SessionOptions options = new OrtSession.SessionOptions();
-            // Nnapi may improve performance. Without it still 90+ % detections sometimes. 
-            
-            boolean nnapiAdded = true;
-            
-            final int cores = Math.max(1, Runtime.getRuntime().availableProcessors());
-
-            // 1) Attempt to add QNN (Qualcomm Neural Network) if available
-            /* Need to build from github with support - check chatGPT 
-            ai.onnxruntime.OrtException: Error code - ORT_INVALID_ARGUMENT - message: This binary was not compiled with ArmNN support.
-            or 
-            ai.onnxruntime.OrtException: Error code - ORT_INVALID_ARGUMENT - message: QNN execution provider is not supported in this build. 
-
-                Map<String, String> qnnOptions = new HashMap<>();
-                // For example: qnnOptions.put("backend", "DSP");
-                // qnnOptions.put("profiling_level", "default");
-                // qnnOptions.put("remote_heap", "true"); etc.
-                options.addQnn(qnnOptions);
-                Log.i(TAG, "QNN EP added successfully.");
-            } catch (Exception e) {
-                Log.w(TAG, " or failed to load.", e);
-            }
-            */
-            // 2) Attempt to add NNAPI
-            try {
-                options.addNnapi(); 
-                // or options.addNnapi(EnumSet.of(NNAPIFlags.CPU_DISABLED)) for specific flags
-                Log.i(TAG, "NNAPI EP added successfully.");
-            } catch (Exception e) {
-                Log.w(TAG, "NNAPI EP not available or failed to load.", e);
-            }
-
-            // Add CPU option
-            options.addCPU(true);
 
-            // 5) Attempt to add XNNPACK
-            try {
-                Map<String, String> xnnpackOpts = Collections.emptyMap(); // or new HashMap<>() with any specific options
-                options.addXnnpack(xnnpackOpts);
-                Log.i(TAG, "XNNPACK EP added successfully.");
-            } catch (Exception e) {
-                Log.w(TAG, "XNNPACK EP not available or failed to load.", e);
-            }
-            
-            // 2) Use a lower graph optimization level if battery is a bigger concern than speed
-            // Start with ORT_ENABLE_ALL
-            // Than ORT_ENABLE_EXTENDED or ORT_ENABLE_BASIC
-            //options.setGraphOptimizationLevel(OrtSession.SessionOptions.OptLevel.ORT_ENABLE_EXTENDED);
-            options.setOptimizationLevel(OrtSession.SessionOptions.OptLevel.ALL_OPT);
-            Log.i(TAG, "NNAPI available. Using hardware acceleration + ORT_ENABLE_ALL.");
-
-            // 3) Limit threads (less CPU usage => lower battery drain)
-            options.setIntraOpNumThreads(cores);     // use all cores
-            options.setInterOpNumThreads(cores);     // allow parallel node exec
-            options.setExecutionMode(OrtSession.SessionOptions.ExecutionMode.PARALLEL);
-
-            //  CPU Arena Allocator: 
-            //    - "true" can speed up repeated inferences by reusing memory blocks (often beneficial overall).
-            //    - "false" might reduce memory overhead if you do few inferences. Usually "true" is recommended.
-            options.setCPUArenaAllocator(true);
-
-            // Memory Pattern Optimization:
-            //    - "true" pre-allocates memory patterns for known shapes. Tends to speed up repeated inferences 
-            //      => potentially less CPU time => less battery usage.
-            //    - "false" if shapes vary wildly or you have memory constraints. 
-            options.setMemoryPatternOptimization(true);
-
-            options.setSessionLogVerbosityLevel(0);
-
-            session = env.createSession(modelPath, options);
+            session = ModelLoader.createCachedSession(env, context, modelPath,
+                    this::buildSessionOptions, null);
             inputNames = new ArrayList<>(session.getInputNames());
 
-            hBuffer = FloatBuffer.wrap(h);
+            outputNames = new ArrayList<>(session.getOutputNames());
+
+            hBuffer = directFloats(STATE_LEN);
             hTensor = OnnxTensor.createTensor(env, hBuffer, h_tensorShape);
             
             //hTensor = OnnxTensor.createTensor(env, hBuffer, h_tensorShape);
@@ -163,11 +105,18 @@ public class VADModelWrapper {
                         + ", Expected: " + Arrays.toString(h_tensorShape));
             }
             
-            cBuffer = FloatBuffer.wrap(c);
+            cBuffer = directFloats(STATE_LEN);
             cTensor = OnnxTensor.createTensor(env, cBuffer, c_tensorShape);
 
             srTensor = OnnxTensor.createTensor(env, srBuffer, srShape);
-            inputBuffer = FloatBuffer.allocate(Constants.FRAME_LENGTH);
+            inputBuffer = directFloats(Constants.FRAME_LENGTH);
+            inputTensor = OnnxTensor.createTensor(env, inputBuffer, chunkShape);
+
+            inputs.put("input", inputTensor);
+            inputs.put("sr", srTensor);
+            inputs.put("h", hTensor);
+            inputs.put("c", cTensor);
+            pinOutputs();
 
             Log.d(TAG, "VADModelWrapper: Model loaded successfully from " + modelPath);
         } catch (OrtException e) {
@@ -182,43 +131,82 @@ public class VADModelWrapper {
         return Constants.FRAME_LENGTH;
     }
 
-    private String copyAssetToInternalStorage(String assetName) {
-        File file = new File(context.getFilesDir(), assetName);
-        File parentFile = file.getParentFile();
-        if (!parentFile.exists()) {
-            boolean dirsCreated = parentFile.mkdirs();
-            Log.d(TAG, "Directories created: " + dirsCreated);
+    // preOptimized: the graph comes from the optimized model cache (no graph optimization).
+    private OrtSession.SessionOptions buildSessionOptions(boolean preOptimized) throws OrtException {
+        OrtSession.SessionOptions options = new OrtSession.SessionOptions();
+        // Nnapi may improve performance. Without it still 90+ % detections sometimes. 
+        
+        boolean nnapiAdded = true;
+        
+        final int cores = Math.max(1, Runtime.getRuntime().availableProcessors());
+
+        // 1) Attempt to add QNN (Qualcomm Neural Network) if available
+        /* Need to build from github with support - check chatGPT 
+        ai.onnxruntime.OrtException: Error code - ORT_INVALID_ARGUMENT - message: This binary was not compiled with ArmNN support.
+        or 
+        ai.onnxruntime.OrtException: Error code - ORT_INVALID_ARGUMENT - message: QNN execution provider is not supported in this build. 
+
+            Map<String, String> qnnOptions = new HashMap<>();
+            // For example: qnnOptions.put("backend", "DSP");
+            // qnnOptions.put("profiling_level", "default");
+            // qnnOptions.put("remote_heap", "true"); etc.
+            options.addQnn(qnnOptions);
+            Log.i(TAG, "QNN EP added successfully.");
+        } catch (Exception e) {
+            Log.w(TAG, " or failed to load.", e);
         }
-
-        // Delete the existing file if it exists
-        if (file.exists()) {
-            boolean deleted = file.delete();
-            Log.d(TAG, "Existing asset deleted: " + deleted);
+        */
+        // 2) Attempt to add NNAPI
+        try {
+            options.addNnapi(); 
+            // or options.addNnapi(EnumSet.of(NNAPIFlags.CPU_DISABLED)) for specific flags
+            Log.i(TAG, "NNAPI EP added successfully.");
+        } catch (Exception e) {
+            Log.w(TAG, "NNAPI EP not available or failed to load.", e);
         }
 
-        if (!file.exists()) {
-            try {
-                AssetManager assetManager = context.getAssets();
-                Log.d(TAG, "Attempting to open asset: " + assetName);
-                InputStream in = assetManager.open(assetName);
-                FileOutputStream out = new FileOutputStream(file);
-                byte[] buffer = new byte[1024];
-                int read;
-                while ((read = in.read(buffer)) != -1) {
-                    out.write(buffer, 0, read);
-                }
-                in.close();
-                out.close();
-                Log.d(TAG, "Asset copied to internal storage: " + file.getAbsolutePath());
-            } catch (IOException e) {
-                Log.e(TAG, "Failed to copy asset file: " + assetName, e);
-                return null;
-            }
-        
-        } else {
-            Log.d(TAG, "Asset already exists in internal storage: " + file.getAbsolutePath());
+        // Add CPU option
+        options.addCPU(true);
+
+        // 5) Attempt to add XNNPACK
+        try {
+            Map<String, String> xnnpackOpts = Collections.emptyMap(); // or new HashMap<>() with any specific options
+            options.addXnnpack(xnnpackOpts);
+            Log.i(TAG, "XNNPACK EP added successfully.");
+        } catch (Exception e) {
+            Log.w(TAG, "XNNPACK EP not available or failed to load.", e);
         }
-        return file.getAbsolutePath();
+        
+        // 2) Use a lower graph optimization level if battery is a bigger concern than speed
+        // Start with ORT_ENABLE_ALL
+        // Than ORT_ENABLE_EXTENDED or ORT_ENABLE_BASIC
+        //options.setGraphOptimizationLevel(OrtSession.SessionOptions.OptLevel.ORT_ENABLE_EXTENDED);
+        options.setOptimizationLevel(preOptimized ? OrtSession.SessionOptions.OptLevel.NO_OPT
+                                                  : OrtSession.SessionOptions.OptLevel.ALL_OPT);
+        Log.i(TAG, "NNAPI available. Using hardware acceleration + ORT_ENABLE_ALL.");
+
+        // 3) Limit threads (less CPU usage => lower battery drain)
+        options.setIntraOpNumThreads(cores);     // use all cores
+        options.setInterOpNumThreads(cores);     // allow parallel node exec
+        options.setExecutionMode(OrtSession.SessionOptions.ExecutionMode.PARALLEL);
+
+        //  CPU Arena Allocator: 
+        //    - "true" can speed up repeated inferences by reusing memory blocks (often beneficial overall).
+        //    - "false" might reduce memory overhead if you do few inferences. Usually "true" is recommended.
+        options.setCPUArenaAllocator(true);
+
+        // Memory Pattern Optimization:
+        //    - "true" pre-allocates memory patterns for known shapes. Tends to speed up repeated inferences 
+        //      => potentially less CPU time => less battery usage.
+        //    - "false" if shapes vary wildly or you have memory constraints. 
+        options.setMemoryPatternOptimization(true);
+
+        options.setSessionLogVerbosityLevel(0);
+        return options;
+    }
+
+    private String copyAssetToInternalStorage(String assetName) {
+        return ModelAssetCache.extractModel(context, assetName);
     }
 /*
     public List<float[]> splitAudioData(short[] x, int frameSize) {
@@ -317,61 +305,120 @@ public float predict_3(short[] x, int frameSize) throws OrtException {
     return meanPrediction;
 }
 */
-public float predict_2(short[] x, int frameSize) throws OrtException {
-
-    for (int i = 0; i < x.length; i++) {
-        floatInput[i] = x[i] / 32767.0f;
+// One FRAME_LENGTH frame -> speech probability. x is normalized straight into the input tensor
+// (shorter frames are zero-padded, longer ones truncated); the LSTM state carries over to the
+// next call. Every Result is closed before returning, so steady state allocates no native memory.
+public synchronized float predict_2(short[] x, int frameSize) throws OrtException {
+    if (session == null) {
+        Log.d(TAG, "predict_2: session closed");
+        return 0;
     }
-    //Log.d(TAG, "VADModelWrapper chunk number: " + i);
-    //Log.d(TAG, "VADModelWrapper chunk: " + chunk);
-
-    chunkShape[1] = floatInput.length;
-    if (chunkShape[1] <= 0)
-    {
+    int n = Math.min(x.length, Constants.FRAME_LENGTH);
+    if (n <= 0) {
         Log.d(TAG,  "chunkShape[1] <= 0 null");
         return 0;
     }
-    //Log.d(TAG, "com.SdkPkh.Rlo chunkShape dimensions: [" + chunkShape[0] + ", " + chunkShape[1] + "]");
     inputBuffer.clear();
-    inputBuffer.put(floatInput).flip();
-    OnnxTensor inputTensor = OnnxTensor.createTensor(env, inputBuffer, chunkShape);
-    
-    hBuffer.clear(); // Reset position for writing
-    hBuffer.put(h);  // Write updated values into the buffer
-    hBuffer.flip();  // Prepare buffer for reading by the ONNX model
-
-    // Update the buffer contents without reallocating
-    cBuffer.clear(); // Reset position for writing
-    cBuffer.put(c);  // Write updated values into the buffer
-    cBuffer.flip();  // Prepare buffer for reading by the ONNX model
-
-    // Update the buffer contents without reallocating
-    srBuffer.clear(); // Reset position for writing
-    srBuffer.put(srArray);  // Write updated values into the buffer
-    srBuffer.flip();  // Prepare buffer for reading by the ONNX model
-
-//        hTensor = OnnxTensor.createTensor(env, hBuffer, h_tensorShape);
-//        cTensor = OnnxTensor.createTensor(env, cBuffer, c_tensorShape);
-//        srTensor = OnnxTensor.createTensor(env, srBuffer, srShape);
-
-    inputs.put("input", inputTensor);
-    inputs.put("sr", srTensor);
-    inputs.put("h", hTensor);
-    inputs.put("c", cTensor);
-    OrtSession.Result result = session.run(inputs);
-
-    OnnxValue out = result.get(0);
-    OnnxTensor hOutput = (OnnxTensor) result.get(1);
-    OnnxTensor cOutput = (OnnxTensor) result.get(2);
-
-    h = hOutput.getFloatBuffer().array();
-    c = cOutput.getFloatBuffer().array();
-    // Cast the result of getValue() to float[]
-    //h = (float[]) hOutput.getValue();
-    //c = (float[]) cOutput.getValue();
-    float[] outputData = ((OnnxTensor) out).getFloatBuffer().array();
-    return outputData[0];
+    for (int i = 0; i < n; i++) {
+        inputBuffer.put(x[i] * PCM_SCALE);
+    }
+    while (inputBuffer.hasRemaining()) {
+        inputBuffer.put(0.0f);
+    }
+
+    if (pinnedOutputs != null) {
+        try (OrtSession.Result ignored = session.run(inputs, pinnedOutputs)) {
+            copyState(hnBuffer, hBuffer);
+            copyState(cnBuffer, cBuffer);
+            return probBuffer.get(0);
+        } catch (OrtException | LinkageError e) {
+            Log.w(TAG, "predict_2: pinned outputs rejected, using allocated outputs: " + e.getMessage());
+            releasePinnedOutputs();
+        }
+    }
+
+    try (OrtSession.Result result = session.run(inputs)) {
+        OnnxTensor out = (OnnxTensor) result.get(0);
+        copyState(((OnnxTensor) result.get(1)).getFloatBuffer(), hBuffer);
+        copyState(((OnnxTensor) result.get(2)).getFloatBuffer(), cBuffer);
+        return out.getFloatBuffer().get(0);
+    }
+}
+
+// Clears the LSTM state (start of a new stream).
+public synchronized void reset() {
+    if (hBuffer == null) return;
+    zero(hBuffer);
+    zero(cBuffer);
 }
+
+// Releases every native resource owned by this wrapper. The wrapper is unusable afterwards.
+public synchronized void close() {
+    inputs.clear();
+    releasePinnedOutputs();
+    if (inputTensor != null) inputTensor.close();
+    if (hTensor != null) hTensor.close();
+    if (cTensor != null) cTensor.close();
+    if (srTensor != null) srTensor.close();
+    inputTensor = null;
+    hTensor = null;
+    cTensor = null;
+    srTensor = null;
+    if (session != null) {
+        try {
+            session.close();
+        } catch (OrtException e) {
+            Log.w(TAG, "Failed to close VAD session: " + e.getMessage());
+        }
+        session = null;
+    }
+}
+
+private void pinOutputs() {
+    if (outputNames == null || outputNames.size() != 3) return;
+    try {
+        probBuffer = directFloats(1);
+        hnBuffer = directFloats(STATE_LEN);
+        cnBuffer = directFloats(STATE_LEN);
+        pinnedOutputs = new HashMap<>();
+        pinnedOutputs.put(outputNames.get(0), OnnxTensor.createTensor(env, probBuffer, new long[]{1, 1}));
+        pinnedOutputs.put(outputNames.get(1), OnnxTensor.createTensor(env, hnBuffer, h_tensorShape));
+        pinnedOutputs.put(outputNames.get(2), OnnxTensor.createTensor(env, cnBuffer, c_tensorShape));
+    } catch (OrtException e) {
+        Log.w(TAG, "Could not pin VAD outputs: " + e.getMessage());
+        releasePinnedOutputs();
+    }
+}
+
+private void releasePinnedOutputs() {
+    if (pinnedOutputs != null) {
+        for (OnnxTensor t : pinnedOutputs.values()) {
+            t.close();
+        }
+    }
+    pinnedOutputs = null;
+    probBuffer = null;
+    hnBuffer = null;
+    cnBuffer = null;
+}
+
+private static void copyState(FloatBuffer from, FloatBuffer to) {
+    from.rewind();
+    to.clear();
+    to.put(from);
+}
+
+private static void zero(FloatBuffer buf) {
+    buf.clear();
+    while (buf.hasRemaining()) {
+        buf.put(0.0f);
+    }
+}
+
+private static FloatBuffer directFloats(int n) {
+    return ByteBuffer.allocateDirect(n * 4).order(ByteOrder.nativeOrder()).asFloatBuffer();
+}
+
     private float[] preprocessAudio(float[] audioData) {
         for (int i = 0; i < audioData.length; i++) {
             audioData[i] /= 32768.0f; // Normalize to [-1, 1]
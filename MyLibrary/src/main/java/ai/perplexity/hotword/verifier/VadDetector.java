@@ -12,14 +12,12 @@ import ai.onnxruntime.OrtException;
 public class VadDetector {
     private final VadDetectorOnnx model;
     private String TAG = "KeyWordsDetection VadDetector";
-    float[] audioData;
-    private final float[][] preAllocatedInput = new float[1][];
+    private static final float PCM_SCALE = 1.0f / 32767.0f;
 
     public VadDetector(Context context, String modelPath
                                 ) throws OrtException {
 
         this.model = new VadDetectorOnnx(context, modelPath);
-        audioData = new float[Constants.FRAME_LENGTH];
         reset();
     }
 
@@ -33,23 +31,11 @@ public class VadDetector {
         for (int i = 0; i < audioData.length; i++) {
             audioData[i] = ((data[i * 2] & 0xff) | (data[i * 2 + 1] << 8)) / 32767.0f;
         }*/
-        if (data.length != audioData.length) {
-            System.out.println("data.legth != Constants.FRAME_LENGTH");
-            System.out.println("data.legth == " + data.length);
-            System.out.println("audioData.lenght == " + audioData.length);
-            System.out.println("Constants.FRAME_LENGTH == " + Constants.FRAME_LENGTH);
-            System.out.println("Reallocating audioDate == " + Constants.FRAME_LENGTH);
-            audioData = new float[data.length];
-        }
-
-        for (int i = 0; i < audioData.length; i++) {
-            audioData[i] = data[i] / 32767.0f;
-        }
-        preAllocatedInput[0] = audioData;
-
         float speechProb = 0.0f;
         try {
-            speechProb = model.call(preAllocatedInput, Constants.SAMPLE_RATE)[0];
+            // normalized straight into the model's input tensor; the tensor is rebuilt only if
+            // the frame length changes
+            speechProb = model.callPcm16(data, 0, data.length, PCM_SCALE, Constants.SAMPLE_RATE);
         } catch (OrtException e) {
             throw new RuntimeException(e);
         }
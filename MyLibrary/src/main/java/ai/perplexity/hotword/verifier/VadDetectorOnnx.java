@@ -8,6 +8,8 @@ import android.content.Context;
 
 import ai.onnxruntime.*;
 import android.content.Context;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
 import java.nio.LongBuffer;
 import java.util.*;
@@ -26,14 +28,34 @@ import ai.onnxruntime.OrtSession;
 
 
 public class VadDetectorOnnx {
+    private static final int STATE_SIZE = 64;   // LSTM h/c: [2, B, 64]
+
     private final OrtSession session;
-    private float[][][] h;
-    private float[][][] c;
+    private final OrtEnvironment env;
     private int lastSr = 0;
     private final long[] srArray = new long[]{16000};
     private final Map<String, OnnxTensor> inputs;
     private final OnnxTensor srTensor;
     private int lastBatchSize = 0;
+
+    // Persistent native-side tensors: the input and the LSTM state live in direct buffers that
+    // are reused every frame; the new state is copied back into h/c after each run.
+    private int batchSize = 0;
+    private int frameLength = 0;
+    private FloatBuffer inputBuffer;
+    private OnnxTensor inputTensor;
+    private FloatBuffer hBuffer;
+    private FloatBuffer cBuffer;
+    private OnnxTensor hTensor;
+    private OnnxTensor cTensor;
+
+    // Pinned outputs (output, hn, cn); null if the runtime/model does not support them
+    private List<String> outputNames;
+    private Map<String, OnnxTensor> pinnedOutputs;
+    private FloatBuffer probBuffer;
+    private FloatBuffer hnBuffer;
+    private FloatBuffer cnBuffer;
+    private float[] probs = new float[1];
     private static final List<Integer> SAMPLE_RATES = Arrays.asList(8000, 16000);
     private String TAG = "KeyWordsDetection VadDetectorOnnx";
     private Context context;
@@ -91,66 +113,11 @@ public class VadDetectorOnnx {
     // The same copyAssetToInternalStorage logic, but flexible for .so files
     // --------------------------------------------------------------------
     private String copyAssetToInternalStorage(String assetPath, String outputFileName) {
-        File outFile = new File(context.getFilesDir(), outputFileName);
-        if (outFile.exists()) {
-            outFile.delete();
-        }
-
-        try (InputStream in = context.getAssets().open(assetPath);
-            FileOutputStream out = new FileOutputStream(outFile)) {
-
-            byte[] buffer = new byte[1024];
-            int read;
-            while ((read = in.read(buffer)) != -1) {
-                out.write(buffer, 0, read);
-            }
-            out.flush();
-        } catch (IOException e) {
-            Log.e(TAG, "Error copying asset " + assetPath + " to internal storage", e);
-            return null;
-        }
-
-        Log.d(TAG, "Copied asset: " + assetPath + " -> " + outFile.getAbsolutePath());
-        return outFile.getAbsolutePath();
+        return ModelAssetCache.extract(context, assetPath, outputFileName);
     }
 
     private String copyAssetToInternalStorage(String assetName) {
-        File file = new File(context.getFilesDir(), assetName);
-        File parentFile = file.getParentFile();
-        if (!parentFile.exists()) {
-            boolean dirsCreated = parentFile.mkdirs();
-            Log.d(TAG, "Directories created: " + dirsCreated);
-        }
-
-        // Delete the existing file if it exists
-        if (file.exists()) {
-            boolean deleted = file.delete();
-            Log.d(TAG, "Existing asset deleted: " + deleted);
-        }
-
-        if (!file.exists()) {
-            try {
-                AssetManager assetManager = context.getAssets();
-                Log.d(TAG, "Attempting to open asset: " + assetName);
-                InputStream in = assetManager.open(assetName);
-                FileOutputStream out = new FileOutputStream(file);
-                byte[] buffer = new byte[1024];
-                int read;
-                while ((read = in.read(buffer)) != -1) {
-                    out.write(buffer, 0, read);
-                }
-                in.close();
-                out.close();
-                Log.d(TAG, "Asset copied to internal storage: " + file.getAbsolutePath());
-            } catch (IOException e) {
-                Log.e(TAG, "Failed to copy asset file: " + assetName, e);
-                return null;
-            }
-        
-        } else {
-            Log.d(TAG, "Asset already exists in internal storage: " + file.getAbsolutePath());
-        }
-        return file.getAbsolutePath();
+        return ModelAssetCache.extractModel(context, assetName);
     }
 
     public VadDetectorOnnx(Context context, String modelPath) throws OrtException {
@@ -162,13 +129,25 @@ public class VadDetectorOnnx {
         //modelPath = copyAssetToInternalStorage(modelPath);
         printNativeLibraries(this.context);
         OrtEnvironment env = OrtEnvironment.getEnvironment();
-        OrtSession.SessionOptions options = new OrtSession.SessionOptions();
 
         // We’ll store the device’s nativeLib dir (where the .so files from jniLibs go)
         //String libDir = context.getApplicationInfo().nativeLibraryDir;
         String packageLibDir = context.getPackageResourcePath(); // Retrieve the package path
         File packageLib = new File(packageLibDir, "lib");
 
+        this.env = env;
+        session = ModelLoader.createCachedSession(env, context, modelPath, this::buildSessionOptions, null);
+        outputNames = new ArrayList<>(session.getOutputNames());
+        resetStates();
+        // Create srTensor once with srArray
+        srTensor = OnnxTensor.createTensor(env, LongBuffer.wrap(srArray), new long[]{1});
+        inputs = new HashMap<>();
+        inputs.put("sr", srTensor);
+    }
+
+    // preOptimized: the graph comes from the optimized model cache (no graph optimization).
+    private OrtSession.SessionOptions buildSessionOptions(boolean preOptimized) throws OrtException {
+        OrtSession.SessionOptions options = new OrtSession.SessionOptions();
         final int cores = Math.max(1, Runtime.getRuntime().availableProcessors());
 
         try {
@@ -179,7 +158,8 @@ public class VadDetectorOnnx {
             Log.w(TAG, "XNNPACK EP not available or failed to load.", e);
         }
 
-        options.setOptimizationLevel(OrtSession.SessionOptions.OptLevel.ALL_OPT);
+        options.setOptimizationLevel(preOptimized ? OrtSession.SessionOptions.OptLevel.NO_OPT
+                                                  : OrtSession.SessionOptions.OptLevel.ALL_OPT);
 //            options.setIntraOpNumThreads(Math.min(2, cores)); Best????
         options.setIntraOpNumThreads(Math.min(2, cores)); 
         options.setInterOpNumThreads(1);
@@ -187,23 +167,21 @@ public class VadDetectorOnnx {
         options.setCPUArenaAllocator(true);
         options.setMemoryPatternOptimization(true);
         options.setSessionLogVerbosityLevel(0);
-
-        session = env.createSession(modelPath, options);
-        resetStates();
-        // Create srTensor once with srArray
-        srTensor = OnnxTensor.createTensor(env, LongBuffer.wrap(srArray), new long[]{1});
-        inputs = new HashMap<>();
-        inputs.put("sr", srTensor);
+        return options;
     }
 
     void resetStates() {
-        h = new float[2][1][64];
-        c = new float[2][1][64];
+        if (hBuffer != null) {
+            zero(hBuffer);
+            zero(cBuffer);
+        }
         lastSr = 0;
         lastBatchSize = 0;
     }
 
     public void close() throws OrtException {
+        releaseTensors();
+        srTensor.close();
         session.close();
     }
 
@@ -226,57 +204,146 @@ public class VadDetectorOnnx {
         return new ValidationResult(x, sr);
     }
 
+    // Returns the per-batch speech probabilities in an array that is reused by the next call.
     public float[] call(float[][] x, int sr) throws OrtException {
         int batchSize = x.length;
+        ensureTensors(batchSize, x[0].length);
+
+        inputBuffer.clear();
+        for (float[] row : x) {
+            inputBuffer.put(row, 0, frameLength);
+        }
+        return run(sr, batchSize);
+    }
+
+    // Single 16-bit PCM frame, normalized by `scale` straight into the input tensor.
+    // Returns the speech probability; allocates nothing in steady state.
+    public float callPcm16(short[] pcm, int off, int len, float scale, int sr) throws OrtException {
+        ensureTensors(1, len);
+
+        inputBuffer.clear();
+        for (int i = 0; i < len; i++) {
+            inputBuffer.put(pcm[off + i] * scale);
+        }
+        return run(sr, 1)[0];
+    }
 
+    private float[] run(int sr, int batchSize) throws OrtException {
         if (lastBatchSize == 0 || lastSr != sr || lastBatchSize != batchSize) {
-            System.out.println("RESET STATES ??????????????????????");
             resetStates();
         }
 
-        OrtEnvironment env = OrtEnvironment.getEnvironment();
-
-        OnnxTensor inputTensor = null;
-        OnnxTensor hTensor = null;
-        OnnxTensor cTensor = null;
-        OrtSession.Result ortOutputs = null;
+        if (pinnedOutputs != null) {
+            try (OrtSession.Result ignored = session.run(inputs, pinnedOutputs)) {
+                copyState(hnBuffer, hBuffer);
+                copyState(cnBuffer, cBuffer);
+                probBuffer.rewind();
+                probBuffer.get(probs, 0, batchSize);
+                lastSr = sr;
+                lastBatchSize = batchSize;
+                return probs;
+            } catch (OrtException | LinkageError e) {
+                Log.w(TAG, "Pinned VAD outputs rejected, using allocated outputs: " + e.getMessage());
+                releasePinnedOutputs();
+            }
+        }
 
-        try {
-            inputTensor = OnnxTensor.createTensor(env, x);
-            hTensor = OnnxTensor.createTensor(env, h);
-            cTensor = OnnxTensor.createTensor(env, c);
-            //srTensor = OnnxTensor.createTensor(env, new long[]{sr});
-
-            //Map<String, OnnxTensor> inputs = new HashMap<>();
-            inputs.put("input", inputTensor);
-            //inputs.put("sr", srTensor);
-            inputs.put("h", hTensor);
-            inputs.put("c", cTensor);
-
-            ortOutputs = session.run(inputs);
+        try (OrtSession.Result ortOutputs = session.run(inputs)) {
             float[][] output = (float[][]) ortOutputs.get(0).getValue();
-            h = (float[][][]) ortOutputs.get(1).getValue();
-            c = (float[][][]) ortOutputs.get(2).getValue();
+            copyState(((OnnxTensor) ortOutputs.get(1)).getFloatBuffer(), hBuffer);
+            copyState(((OnnxTensor) ortOutputs.get(2)).getFloatBuffer(), cBuffer);
 
             lastSr = sr;
             lastBatchSize = batchSize;
-            return output[0];
-        } finally {
-            inputs.remove("input");
-            inputs.remove("h");
-            inputs.remove("c");
-            if (inputTensor != null) {
-                inputTensor.close();
-            }
-            if (hTensor != null) {
-                hTensor.close();
+            for (int b = 0; b < batchSize; b++) {
+                probs[b] = output[b][0];
             }
-            if (cTensor != null) {
-                cTensor.close();
+            return probs;
+        }
+    }
+
+    // (Re)create the persistent tensors when the batch size or frame length changes.
+    private void ensureTensors(int batch, int length) throws OrtException {
+        if (inputTensor != null && batch == batchSize && length == frameLength) {
+            return;
+        }
+        releaseTensors();
+        batchSize = batch;
+        frameLength = length;
+
+        inputBuffer = directFloats(batch * length);
+        inputTensor = OnnxTensor.createTensor(env, inputBuffer, new long[]{batch, length});
+        long[] stateShape = new long[]{2, batch, STATE_SIZE};
+        hBuffer = directFloats(2 * batch * STATE_SIZE);
+        cBuffer = directFloats(2 * batch * STATE_SIZE);
+        hTensor = OnnxTensor.createTensor(env, hBuffer, stateShape);
+        cTensor = OnnxTensor.createTensor(env, cBuffer, stateShape);
+        probs = new float[batch];
+
+        inputs.put("input", inputTensor);
+        inputs.put("h", hTensor);
+        inputs.put("c", cTensor);
+
+        if (outputNames != null && outputNames.size() == 3) {
+            try {
+                probBuffer = directFloats(batch);
+                hnBuffer = directFloats(2 * batch * STATE_SIZE);
+                cnBuffer = directFloats(2 * batch * STATE_SIZE);
+                pinnedOutputs = new HashMap<>();
+                pinnedOutputs.put(outputNames.get(0), OnnxTensor.createTensor(env, probBuffer, new long[]{batch, 1}));
+                pinnedOutputs.put(outputNames.get(1), OnnxTensor.createTensor(env, hnBuffer, stateShape));
+                pinnedOutputs.put(outputNames.get(2), OnnxTensor.createTensor(env, cnBuffer, stateShape));
+            } catch (OrtException e) {
+                Log.w(TAG, "Could not pin VAD outputs: " + e.getMessage());
+                releasePinnedOutputs();
             }
-            if (ortOutputs != null) {
-                ortOutputs.close();
+        }
+        // new state tensors start from zero state
+        lastBatchSize = 0;
+    }
+
+    private void releaseTensors() {
+        inputs.remove("input");
+        inputs.remove("h");
+        inputs.remove("c");
+        if (inputTensor != null) inputTensor.close();
+        if (hTensor != null) hTensor.close();
+        if (cTensor != null) cTensor.close();
+        inputTensor = null;
+        hTensor = null;
+        cTensor = null;
+        inputBuffer = null;
+        hBuffer = null;
+        cBuffer = null;
+        releasePinnedOutputs();
+    }
+
+    private void releasePinnedOutputs() {
+        if (pinnedOutputs != null) {
+            for (OnnxTensor t : pinnedOutputs.values()) {
+                t.close();
             }
         }
+        pinnedOutputs = null;
+        probBuffer = null;
+        hnBuffer = null;
+        cnBuffer = null;
+    }
+
+    private static void copyState(FloatBuffer from, FloatBuffer to) {
+        from.rewind();
+        to.clear();
+        to.put(from);
+    }
+
+    private static void zero(FloatBuffer buf) {
+        buf.clear();
+        while (buf.hasRemaining()) {
+            buf.put(0.0f);
+        }
+    }
+
+    private static FloatBuffer directFloats(int n) {
+        return ByteBuffer.allocateDirect(n * 4).order(ByteOrder.nativeOrder()).asFloatBuffer();
     }
 }
@@ -0,0 +1,140 @@
+package ai.perplexity.hotword.verifier;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+// 16-bit mono PCM WAV writer for the detection capture ring. The header and the samples live in
+// reusable little-endian direct buffers; the two unwrapped ring segments are written together
+// with the header in one gathering FileChannel write, so there is no byte[] staging and no
+// per-sample byte shuffling. Optionally writes into a pre-sized memory-mapped file instead,
+// rewritten in place on every capture; bytes past a shorter capture's data chunk are zeroed, so
+// no samples of an earlier detection are left in the file. Methods are synchronized (capture can run on the
+// detection-event thread while a caller flushes directly).
+final class WavWriter implements AutoCloseable {
+    private static final int HEADER_BYTES = 44;
+
+    private final int sampleRate;
+    private final int maxSamples;
+    private final ByteBuffer header;
+    private final ByteBuffer data;
+
+    // mapped capture file (null: write regular files)
+    private File mappedFile;
+    private RandomAccessFile mappedRaf;
+    private MappedByteBuffer mapped;
+    private int mappedEnd;           // bytes of the mapping that may be non-zero
+
+    WavWriter(int sampleRate, int maxSamples) {
+        this.sampleRate = sampleRate;
+        this.maxSamples = maxSamples;
+        this.header = ByteBuffer.allocateDirect(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        this.data = ByteBuffer.allocateDirect(maxSamples * 2).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    // Write `samples` samples of ring, oldest at ring[position], as a WAV to file.
+    // With a mapped capture file set, that file is rewritten instead and returned.
+    synchronized File writeRing(File file, short[] ring, int position, int samples) throws IOException {
+        if (samples > maxSamples || samples > ring.length) {
+            throw new IllegalArgumentException("samples " + samples + " > capacity " + maxSamples);
+        }
+        int first = Math.min(samples, ring.length - position);
+
+        fillHeader(samples);
+        if (mapped != null) {
+            mapped.clear();
+            mapped.put(header);
+            mapped.asShortBuffer().put(ring, position, first).put(ring, 0, samples - first);
+            int end = HEADER_BYTES + samples * 2;
+            for (int i = end; i < mappedEnd; i++) {
+                mapped.put(i, (byte) 0);
+            }
+            mappedEnd = end;
+            mapped.force();
+            return mappedFile;
+        }
+
+        data.clear();
+        data.asShortBuffer().put(ring, position, first).put(ring, 0, samples - first);
+        ByteBuffer seg1 = data.duplicate();
+        seg1.position(0).limit(first * 2);
+        ByteBuffer seg2 = data.duplicate();
+        seg2.position(first * 2).limit(samples * 2);
+        ByteBuffer[] parts = {header, seg1, seg2};
+
+        try (FileOutputStream fos = new FileOutputStream(file);
+             FileChannel ch = fos.getChannel()) {
+            long remaining = HEADER_BYTES + samples * 2L;
+            while (remaining > 0) {
+                remaining -= ch.write(parts);
+            }
+        }
+        return file;
+    }
+
+    // Pre-size and map `file` for in-place captures of up to maxSamples (null: regular files).
+    synchronized void setMappedFile(File file) throws IOException {
+        unmap();
+        if (file == null) return;
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            long size = HEADER_BYTES + maxSamples * 2L;
+            raf.setLength(size);
+            mapped = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+            mapped.order(ByteOrder.LITTLE_ENDIAN);
+            mappedEnd = (int) size; // the file may hold an earlier run's capture
+        } catch (IOException e) {
+            raf.close();
+            mapped = null;
+            throw e;
+        }
+        mappedRaf = raf;
+        mappedFile = file;
+    }
+
+    synchronized File getMappedFile() {
+        return mappedFile;
+    }
+
+    private void fillHeader(int samples) {
+        int dataBytes = samples * 2;
+        header.clear();
+        header.put((byte) 'R').put((byte) 'I').put((byte) 'F').put((byte) 'F');
+        header.putInt(36 + dataBytes);
+        header.put((byte) 'W').put((byte) 'A').put((byte) 'V').put((byte) 'E');
+        header.put((byte) 'f').put((byte) 'm').put((byte) 't').put((byte) ' ');
+        header.putInt(16);
+        header.putShort((short) 1);              // PCM
+        header.putShort((short) 1);              // mono
+        header.putInt(sampleRate);
+        header.putInt(sampleRate * 2);           // byte rate
+        header.putShort((short) 2);              // block align
+        header.putShort((short) 16);             // bits per sample
+        header.put((byte) 'd').put((byte) 'a').put((byte) 't').put((byte) 'a');
+        header.putInt(dataBytes);
+        header.flip();
+    }
+
+    private void unmap() {
+        // the mapping itself is released by the GC; closing the file is enough here
+        mapped = null;
+        mappedFile = null;
+        if (mappedRaf != null) {
+            try {
+                mappedRaf.close();
+            } catch (IOException ignored) {
+            }
+            mappedRaf = null;
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        unmap();
+    }
+}
@@ -0,0 +1,114 @@
+package ai.perplexity.hotword.verifier;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class MelFrameRingTest {
+    private static final int BINS = 3;
+
+    @Test
+    public void appendBeforeFullKeepsEveryFrame() {
+        MelFrameRing ring = new MelFrameRing(4, BINS);
+        appendFrames(ring, 1, 3);
+
+        assertEquals(3, ring.size());
+        assertEquals(1f, ring.get(0, 0), 0f);
+        assertEquals(3.2f, ring.get(2, 2), 0f);
+    }
+
+    @Test
+    public void appendPastCapacityDropsTheOldestFrames() {
+        MelFrameRing ring = new MelFrameRing(4, BINS);
+        appendFrames(ring, 1, 7); // frames 1..7, ring keeps 4..7
+
+        assertEquals(4, ring.size());
+        for (int t = 0; t < 4; t++) {
+            assertEquals(4f + t, ring.get(t, 0), 0f);
+        }
+    }
+
+    @Test
+    public void copyLastReturnsNewestRowsInOrderAfterWrap() {
+        MelFrameRing ring = new MelFrameRing(4, BINS);
+        appendFrames(ring, 1, 6); // head has moved to slot 2
+
+        float[] dst = new float[1 + 3 * BINS];
+        ring.copyLast(3, dst, 1);
+        float[] expected = new float[1 + 3 * BINS];
+        System.arraycopy(flat(4, 3), 0, expected, 1, 3 * BINS);
+        assertArrayEquals(expected, dst, 0f);
+
+        float[] all = new float[4 * BINS];
+        ring.copyLast(4, all, 0);
+        assertArrayEquals(flat(3, 4), all, 0f);
+    }
+
+    @Test
+    public void lastRowsReturnsNewestRowsInOrderAfterWrap() {
+        MelFrameRing ring = new MelFrameRing(4, BINS);
+        appendFrames(ring, 1, 9);
+
+        float[][] rows = ring.lastRows(3);
+        assertEquals(3, rows.length);
+        for (int t = 0; t < 3; t++) {
+            assertArrayEquals(frame(7 + t), rows[t], 0f);
+        }
+    }
+
+    @Test
+    public void copyFramesSpansTheWrap() {
+        MelFrameRing ring = new MelFrameRing(4, BINS);
+        appendFrames(ring, 1, 6); // frames 3..6, oldest in slot 2
+
+        float[] dst = new float[2 * BINS];
+        ring.copyFrames(1, 2, dst, 0); // frames 4 and 5 sit in slots 3 and 0
+        assertArrayEquals(flat(4, 2), dst, 0f);
+    }
+
+    @Test
+    public void fillPrimesAndWrapsLikeAppend() {
+        MelFrameRing ring = new MelFrameRing(4, BINS);
+        appendFrames(ring, 1, 3);
+        ring.fill(2, 9f);
+
+        assertEquals(4, ring.size());
+        assertArrayEquals(new float[]{2f, 2.1f, 2.2f, 3f, 3.1f, 3.2f, 9f, 9f, 9f, 9f, 9f, 9f},
+                lastFlat(ring, 4), 0f);
+    }
+
+    @Test
+    public void rowOfANewWidthStartsOver() {
+        MelFrameRing ring = new MelFrameRing(4, BINS);
+        appendFrames(ring, 1, 3);
+        ring.append(new float[]{5f, 6f});
+
+        assertEquals(1, ring.size());
+        assertEquals(2, ring.bins());
+        assertArrayEquals(new float[]{5f, 6f}, ring.lastRows(1)[0], 0f);
+    }
+
+    // frame k has bins k, k + 0.1, k + 0.2
+    private static float[] frame(int k) {
+        float[] row = new float[BINS];
+        for (int b = 0; b < BINS; b++) row[b] = k + b / 10f;
+        return row;
+    }
+
+    private static void appendFrames(MelFrameRing ring, int first, int count) {
+        for (int k = first; k < first + count; k++) ring.append(frame(k));
+    }
+
+    private static float[] flat(int first, int count) {
+        float[] out = new float[count * BINS];
+        for (int t = 0; t < count; t++) System.arraycopy(frame(first + t), 0, out, t * BINS, BINS);
+        return out;
+    }
+
+    private static float[] lastFlat(MelFrameRing ring, int count) {
+        float[] out = new float[count * ring.bins()];
+        ring.copyLast(count, out, 0);
+        return out;
+    }
+}
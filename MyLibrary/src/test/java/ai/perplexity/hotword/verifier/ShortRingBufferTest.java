@@ -0,0 +1,97 @@
+package ai.perplexity.hotword.verifier;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class ShortRingBufferTest {
+
+    @Test
+    public void readsNewestSamplesBeforeTheRingIsFull() {
+        ShortRingBuffer ring = new ShortRingBuffer(8);
+        ring.write(seq(1, 5), 0, 5);
+
+        assertEquals(5, ring.size());
+        assertArrayEquals(new short[]{3, 4, 5}, readLast(ring, 3));
+    }
+
+    @Test
+    public void wrapsAroundAndKeepsOrder() {
+        ShortRingBuffer ring = new ShortRingBuffer(8);
+        ring.write(seq(1, 6), 0, 6);
+        ring.write(seq(7, 5), 0, 5); // 7..11, wraps after 8
+
+        assertEquals(8, ring.size());
+        assertArrayEquals(seq(4, 8), readLast(ring, 8));
+        assertArrayEquals(new short[]{9, 10, 11}, readLast(ring, 3));
+    }
+
+    @Test
+    public void writeLongerThanCapacityKeepsTheNewestSamples() {
+        ShortRingBuffer ring = new ShortRingBuffer(8);
+        ring.write(seq(100, 3), 0, 3);
+        ring.write(seq(1, 20), 0, 20);
+
+        assertEquals(8, ring.size());
+        assertArrayEquals(seq(13, 8), readLast(ring, 8));
+    }
+
+    @Test
+    public void writeHonoursTheSourceOffset() {
+        ShortRingBuffer ring = new ShortRingBuffer(4);
+        ring.write(seq(1, 10), 3, 6); // 4..9, more than capacity from an offset
+
+        assertArrayEquals(seq(6, 4), readLast(ring, 4));
+    }
+
+    @Test
+    public void readLastBeyondSizeReturnsWhatIsThere() {
+        ShortRingBuffer ring = new ShortRingBuffer(8);
+        ring.write(seq(1, 3), 0, 3);
+
+        short[] dst = new short[10];
+        assertEquals(3, ring.readLast(10, dst, 2));
+        assertArrayEquals(new short[]{0, 0, 1, 2, 3, 0, 0, 0, 0, 0}, dst);
+    }
+
+    @Test
+    public void readLastFromEmptyRingCopiesNothing() {
+        ShortRingBuffer ring = new ShortRingBuffer(8);
+        assertEquals(0, ring.readLast(4, new short[4], 0));
+        assertEquals(0, ring.readLast(4, new float[4], 0, 1.0f));
+    }
+
+    @Test
+    public void floatReadScalesAndMatchesShortRead() {
+        ShortRingBuffer ring = new ShortRingBuffer(8);
+        ring.write(seq(1, 11), 0, 11);
+
+        float[] dst = new float[7];
+        assertEquals(6, ring.readLast(6, dst, 1, 0.5f));
+        assertArrayEquals(new float[]{0f, 3f, 3.5f, 4f, 4.5f, 5f, 5.5f}, dst, 0f);
+    }
+
+    @Test
+    public void clearEmptiesTheRing() {
+        ShortRingBuffer ring = new ShortRingBuffer(8);
+        ring.write(seq(1, 6), 0, 6);
+        ring.clear();
+        ring.write(seq(50, 2), 0, 2);
+
+        assertEquals(2, ring.size());
+        assertArrayEquals(new short[]{50, 51}, readLast(ring, 8));
+    }
+
+    private static short[] seq(int from, int n) {
+        short[] s = new short[n];
+        for (int i = 0; i < n; i++) s[i] = (short) (from + i);
+        return s;
+    }
+
+    private static short[] readLast(ShortRingBuffer ring, int n) {
+        short[] dst = new short[Math.min(n, ring.size())];
+        ring.readLast(n, dst, 0);
+        return dst;
+    }
+}
@@ -0,0 +1,193 @@
+package ai.perplexity.hotword.verifier;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+public class WavWriterTest {
+    private static final int SAMPLE_RATE = 16000;
+
+    private File dir;
+    private WavWriter writer;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("wavwriter").toFile();
+        writer = new WavWriter(SAMPLE_RATE, 16);
+    }
+
+    @After
+    public void tearDown() {
+        writer.close();
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File f : files) f.delete();
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void writesHeaderAndFullRingInOrder() throws IOException {
+        short[] ring = ramp(10);
+        File out = writer.writeRing(new File(dir, "a.wav"), ring, 0, 10);
+
+        ByteBuffer wav = read(out);
+        assertEquals(44 + 20, wav.capacity());
+        assertHeader(wav, 10);
+        assertArrayEquals(ring, samples(wav, 10));
+    }
+
+    @Test
+    public void unwrapsRingFromPosition() throws IOException {
+        short[] ring = ramp(10);
+        File out = writer.writeRing(new File(dir, "a.wav"), ring, 7, 10);
+
+        assertArrayEquals(new short[]{7, 8, 9, 0, 1, 2, 3, 4, 5, 6}, samples(read(out), 10));
+    }
+
+    @Test
+    public void positionAtLastSample() throws IOException {
+        short[] ring = ramp(10);
+        File out = writer.writeRing(new File(dir, "a.wav"), ring, 9, 10);
+
+        assertArrayEquals(new short[]{9, 0, 1, 2, 3, 4, 5, 6, 7, 8}, samples(read(out), 10));
+    }
+
+    @Test
+    public void partialCaptureAcrossTheWrap() throws IOException {
+        short[] ring = ramp(10);
+        File out = writer.writeRing(new File(dir, "a.wav"), ring, 7, 5);
+
+        ByteBuffer wav = read(out);
+        assertEquals(44 + 10, wav.capacity());
+        assertHeader(wav, 5);
+        assertArrayEquals(new short[]{7, 8, 9, 0, 1}, samples(wav, 5));
+    }
+
+    @Test
+    public void partialCaptureWithoutWrap() throws IOException {
+        short[] ring = ramp(10);
+        File out = writer.writeRing(new File(dir, "a.wav"), ring, 2, 3);
+
+        assertArrayEquals(new short[]{2, 3, 4}, samples(read(out), 3));
+    }
+
+    @Test
+    public void negativeSamplesAreLittleEndian() throws IOException {
+        short[] ring = {-1, Short.MIN_VALUE, Short.MAX_VALUE, 0x1234};
+        File out = writer.writeRing(new File(dir, "a.wav"), ring, 0, 4);
+
+        byte[] bytes = Files.readAllBytes(out.toPath());
+        assertArrayEquals(new byte[]{(byte) 0xff, (byte) 0xff, 0x00, (byte) 0x80, (byte) 0xff, 0x7f, 0x34, 0x12},
+                Arrays.copyOfRange(bytes, 44, 52));
+    }
+
+    @Test
+    public void rejectsMoreSamplesThanCapacity() throws IOException {
+        try {
+            writer.writeRing(new File(dir, "a.wav"), ramp(20), 0, 17);
+            fail("expected IllegalArgumentException");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @Test
+    public void mappedFileIsRewrittenInPlace() throws IOException {
+        File mapped = new File(dir, "capture.wav");
+        writer.setMappedFile(mapped);
+        File out = writer.writeRing(new File(dir, "ignored.wav"), ramp(16), 4, 16);
+
+        assertEquals(mapped, out);
+        assertFalse(new File(dir, "ignored.wav").exists());
+        ByteBuffer wav = read(mapped);
+        assertHeader(wav, 16);
+        assertArrayEquals(new short[]{4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 0, 1, 2, 3}, samples(wav, 16));
+    }
+
+    @Test
+    public void shorterMappedCaptureZeroesTheOldTail() throws IOException {
+        File mapped = new File(dir, "capture.wav");
+        writer.setMappedFile(mapped);
+        short[] loud = new short[16];
+        Arrays.fill(loud, (short) 1000);
+        writer.writeRing(mapped, loud, 0, 16);
+        writer.writeRing(mapped, ramp(16), 14, 4);
+
+        ByteBuffer wav = read(mapped);
+        assertEquals(44 + 32, wav.capacity()); // stays pre-sized for maxSamples
+        assertHeader(wav, 4);
+        assertArrayEquals(new short[]{14, 15, 0, 1}, samples(wav, 4));
+        for (int i = 44 + 8; i < wav.capacity(); i++) {
+            assertEquals("byte " + i + " past the data chunk", 0, wav.get(i));
+        }
+    }
+
+    @Test
+    public void remappingClearsAnEarlierRunsCapture() throws IOException {
+        File mapped = new File(dir, "capture.wav");
+        writer.setMappedFile(mapped);
+        short[] loud = new short[16];
+        Arrays.fill(loud, (short) 1000);
+        writer.writeRing(mapped, loud, 0, 16);
+        writer.close();
+
+        writer = new WavWriter(SAMPLE_RATE, 16);
+        writer.setMappedFile(mapped);
+        writer.writeRing(mapped, ramp(16), 0, 2);
+
+        ByteBuffer wav = read(mapped);
+        for (int i = 44 + 4; i < wav.capacity(); i++) {
+            assertEquals("byte " + i + " past the data chunk", 0, wav.get(i));
+        }
+    }
+
+    private static short[] ramp(int n) {
+        short[] ring = new short[n];
+        for (int i = 0; i < n; i++) ring[i] = (short) i;
+        return ring;
+    }
+
+    private static ByteBuffer read(File f) throws IOException {
+        return ByteBuffer.wrap(Files.readAllBytes(f.toPath())).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static void assertHeader(ByteBuffer wav, int samples) {
+        assertEquals("RIFF", ascii(wav, 0));
+        assertEquals(36 + samples * 2, wav.getInt(4));
+        assertEquals("WAVE", ascii(wav, 8));
+        assertEquals("fmt ", ascii(wav, 12));
+        assertEquals(16, wav.getInt(16));
+        assertEquals(1, wav.getShort(20));           // PCM
+        assertEquals(1, wav.getShort(22));           // mono
+        assertEquals(SAMPLE_RATE, wav.getInt(24));
+        assertEquals(SAMPLE_RATE * 2, wav.getInt(28));
+        assertEquals(2, wav.getShort(32));
+        assertEquals(16, wav.getShort(34));
+        assertEquals("data", ascii(wav, 36));
+        assertEquals(samples * 2, wav.getInt(40));
+    }
+
+    private static String ascii(ByteBuffer wav, int offset) {
+        char[] c = new char[4];
+        for (int i = 0; i < 4; i++) c[i] = (char) wav.get(offset + i);
+        return new String(c);
+    }
+
+    private static short[] samples(ByteBuffer wav, int n) {
+        short[] s = new short[n];
+        for (int i = 0; i < n; i++) s[i] = wav.getShort(44 + 2 * i);
+        return s;
+    }
+}